@@ -0,0 +1,64 @@
+package org.batch;
+
+import java.time.Duration;
+
+/**
+ * Shared scheduling resources for {@link MicroBatcher}s.
+ *
+ * By default each MicroBatcher owns a background thread that blocks waiting
+ * for jobs. A BatcherRuntime lets any number of batchers share a single timer
+ * for their linger deadlines and a bounded pool of worker threads for
+ * dispatching batches, so the number of threads stays flat no matter how many
+ * batchers are registered.
+ *
+ * The runtime is owned by the client application: shut down the batchers
+ * using it first, then call {@link #shutdown()}.
+ */
+public interface BatcherRuntime {
+    /**
+     * Run a task once the given delay has elapsed.
+     *
+     * Tasks are run on the timer thread and must be short - anything
+     * substantial should be handed off with {@link #execute(Runnable)}.
+     *
+     * @param delay Minimum time to wait before running the task.
+     * @param task The task to run.
+     * @return A handle that can be used to cancel the task.
+     */
+    Timeout schedule(Duration delay, Runnable task);
+
+    /**
+     * Run a task on one of the runtime's worker threads.
+     */
+    void execute(Runnable task);
+
+    /**
+     * Current time of the runtime's clock, in nanoseconds from an arbitrary
+     * origin. Batchers running on the runtime use it to timestamp jobs, so
+     * that a simulated runtime can run them on virtual time.
+     */
+    default long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Stop the timer and worker threads.
+     *
+     * Pending timeouts are discarded, tasks already handed to the
+     * worker pool are allowed to finish.
+     */
+    void shutdown();
+
+    /**
+     * Handle for a task scheduled with {@link #schedule(Duration, Runnable)}.
+     */
+    interface Timeout {
+        /**
+         * Prevent the task from running.
+         *
+         * @return true if the task was cancelled, false if it has
+         *         already run or been cancelled.
+         */
+        boolean cancel();
+    }
+}
@@ -0,0 +1,35 @@
+package org.batch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts job inputs or outputs to and from bytes.
+ *
+ * Used wherever jobs leave the heap, for example when sending batches to a
+ * remote {@link BatchProcessor}. Callers take care of framing - they record
+ * the encoded length alongside the bytes, and represent null values
+ * themselves, so codecs are never given a null value.
+ *
+ * Implementations for common types are available in
+ * {@link org.batch.mb.MBCodecs}.
+ *
+ * @param <T> Type parameter for the encoded value.
+ */
+public interface Codec<T> {
+    /**
+     * @return the exact number of bytes {@link #encode} will write for the value.
+     */
+    int encodedSize(T value);
+
+    /**
+     * Write the value at the buffer's current position. The buffer is
+     * guaranteed to have at least {@link #encodedSize} bytes remaining.
+     */
+    void encode(T value, ByteBuffer buffer);
+
+    /**
+     * Read a value from the buffer. The buffer's position and limit
+     * span exactly the bytes written by {@link #encode}.
+     */
+    T decode(ByteBuffer buffer);
+}
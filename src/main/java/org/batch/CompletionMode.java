@@ -0,0 +1,28 @@
+package org.batch;
+
+/**
+ * Where a {@link MicroBatcher} completes the futures returned from
+ * {@link MicroBatcher#submit(Job)}.
+ *
+ * Completing a future runs any dependent actions registered by the caller
+ * (thenAccept, thenApply etc.) on the completing thread. Moving completion
+ * off the batching thread stops slow callbacks from delaying the next batch.
+ */
+public enum CompletionMode {
+    /**
+     * Complete futures on the thread that invoked the {@link BatchProcessor}.
+     * Lowest overhead, but callbacks delay the next batch.
+     */
+    INLINE,
+
+    /**
+     * Complete each future in its own task on the completion executor.
+     */
+    EXECUTOR,
+
+    /**
+     * Complete all of a batch's futures in a single task on the
+     * completion executor.
+     */
+    BATCHED
+}
@@ -0,0 +1,48 @@
+package org.batch;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Merges compatible jobs in a batch before it is passed to the
+ * {@link BatchProcessor}.
+ *
+ * Jobs whose inputs have equal keys are merged into a single job, in
+ * submission order, and the processor sees one job per key. The result
+ * of the merged job is then used to complete every original job's future.
+ * This suits commutative updates to the same entity, such as counter
+ * increments, where only the combined update needs to be applied.
+ *
+ * Jobs with a null input, or a null key, are never merged.
+ *
+ * @param <TInput> Type parameter for job input.
+ */
+public interface JobCombiner<TInput> {
+    /**
+     * @return the key identifying inputs that can be merged, or null if
+     *         the input should be processed on its own.
+     */
+    Object key(TInput input);
+
+    /**
+     * Merge two inputs with the same key. The earlier input is passed first.
+     */
+    TInput merge(TInput earlier, TInput later);
+
+    /**
+     * Create a combiner from a key function and a merge function.
+     */
+    static <TInput> JobCombiner<TInput> of(Function<? super TInput, ?> key, BinaryOperator<TInput> merge) {
+        return new JobCombiner<>() {
+            @Override
+            public Object key(TInput input) {
+                return key.apply(input);
+            }
+
+            @Override
+            public TInput merge(TInput earlier, TInput later) {
+                return merge.apply(earlier, later);
+            }
+        };
+    }
+}
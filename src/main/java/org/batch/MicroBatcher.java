@@ -1,11 +1,13 @@
 package org.batch;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * MicroBatch interface.
  *
- * Allows submission of jobs and provides a shutdown mechanism.
+ * Allows submission of jobs and provides flush and shutdown mechanisms.
  *
  * @param <TInput> Type parameter for job inputs.
  * @param <TOutput> Type parameter for job outputs.
@@ -20,10 +22,61 @@ public interface MicroBatcher<TInput, TOutput> {
      */
     CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job);
 
+    /**
+     * Submit a job on behalf of a tenant. Batchers that schedule tenants
+     * fairly use the tenant to decide which jobs are batched first; by
+     * default the tenant is ignored.
+     *
+     * @param job Input job to be processed.
+     * @param tenantId Tenant the job belongs to.
+     * @return A {@link CompletableFuture} that signals when the job
+     *         has been processed.
+     */
+    default CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job, String tenantId) {
+        return submit(job);
+    }
+
+    /**
+     * Dispatch all previously submitted jobs without waiting for a
+     * complete batch or the batch timeout. Does not wait for the jobs
+     * to be processed. By default this does nothing, and the jobs are
+     * dispatched when their batch would have been anyway.
+     */
+    default void flush() {
+    }
+
     /**
      * Blocks until all previously submitted jobs have been processed.
      *
      * When called, will prevent submission of any other jobs.
      */
     void shutdown();
+
+    /**
+     * Blocks until all previously submitted jobs have been processed,
+     * or the timeout elapses.
+     *
+     * When called, will prevent submission of any other jobs. By default
+     * this waits for {@link #shutdown()} without a timeout.
+     *
+     * @return true if all jobs were processed within the timeout.
+     */
+    default boolean shutdown(Duration timeout) {
+        shutdown();
+        return true;
+    }
+
+    /**
+     * Stops processing as soon as possible, returning the jobs that
+     * have not been processed.
+     *
+     * When called, will prevent submission of any other jobs. By default
+     * this waits for {@link #shutdown()}, so every job is processed.
+     *
+     * @return the jobs that were submitted but not processed.
+     */
+    default List<Job<TInput>> shutdownNow() {
+        shutdown();
+        return List.of();
+    }
 }
@@ -1,6 +1,9 @@
 package org.batch;
 
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.ToIntFunction;
 
 /**
  * Options for the {@link MicroBatcher} implementation.
@@ -14,6 +17,54 @@ public interface MicroBatcherOptions {
     /**
      * Maximum time {@link MicroBatcher} should wait for new jobs
      * to arrive before submitting a partial batch.
+     *
+     * When running on a {@link BatcherRuntime} this is a linger deadline,
+     * measured from the first job of a partial batch.
      */
     Duration timeout();
+
+    /**
+     * Shared runtime to schedule batches on. If empty, the
+     * {@link MicroBatcher} uses a dedicated background thread.
+     */
+    Optional<BatcherRuntime> runtime();
+
+    /**
+     * Where job futures are completed once a batch has been processed.
+     */
+    CompletionMode completionMode();
+
+    /**
+     * Executor used to complete job futures when the completion mode is
+     * not {@link CompletionMode#INLINE}. If empty, the {@link MicroBatcher}
+     * creates a dedicated completion thread.
+     */
+    Optional<Executor> completionExecutor();
+
+    /**
+     * How the background thread waits for jobs. Not used when running
+     * on a {@link BatcherRuntime}.
+     */
+    WaitStrategy waitStrategy();
+
+    /**
+     * Maximum number of batches being processed by the {@link BatchProcessor}
+     * at once. With more than one, batches may complete out of order.
+     */
+    int maxConcurrentBatches();
+
+    /**
+     * Maximum number of jobs waiting to be batched. Further submissions are
+     * rejected until the backlog falls below this limit.
+     */
+    int maxPendingJobs();
+
+    /**
+     * Weight of each tenant when jobs are scheduled fairly between tenants.
+     * If empty, jobs are batched in submission order regardless of tenant.
+     *
+     * A tenant with weight 2 has twice as many jobs batched per round as
+     * a tenant with weight 1, while both have jobs queued.
+     */
+    Optional<ToIntFunction<String>> tenantWeights();
 }
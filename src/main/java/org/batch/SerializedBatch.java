@@ -0,0 +1,50 @@
+package org.batch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A batch of job inputs that have already been encoded into a single buffer.
+ *
+ * Each input is stored as an int length followed by the encoded bytes, with
+ * a length of -1 for a null input - the same layout the transport uses for
+ * the inputs in a request frame. The buffer can therefore be written to a
+ * channel as-is, or individual inputs can be read using their offsets.
+ *
+ * The buffer is only valid until {@link SerializedBatchProcessor#process}
+ * returns, after which it is reused for later batches.
+ */
+public interface SerializedBatch {
+    /**
+     * @return the number of inputs in the batch.
+     */
+    int size();
+
+    /**
+     * @return a read-only view of the encoded inputs, with position 0 and
+     *         the limit at the end of the last input.
+     */
+    ByteBuffer buffer();
+
+    /**
+     * @return the position in {@link #buffer()} of the encoded bytes for
+     *         the input at the given index, just after its length prefix.
+     */
+    int offset(int index);
+
+    /**
+     * @return the number of encoded bytes for the input at the given
+     *         index, or -1 if the input was null.
+     */
+    int length(int index);
+
+    /**
+     * Decode the input at the given index.
+     */
+    default <T> T decode(int index, Codec<T> codec) {
+        int length = length(index);
+        if (length < 0) {
+            return null;
+        }
+        return codec.decode(buffer().slice(offset(index), length));
+    }
+}
@@ -0,0 +1,23 @@
+package org.batch;
+
+import java.util.List;
+
+/**
+ * Process a batch of pre-encoded job inputs and return job results for each one.
+ *
+ * The counterpart of {@link BatchProcessor} for processors that would
+ * otherwise spend their time encoding jobs into a request buffer, such as
+ * those forwarding batches over the network.
+ *
+ * @param <TOutput> Type parameter for job output.
+ */
+public interface SerializedBatchProcessor<TOutput> {
+    /**
+     * Process a {@link SerializedBatch} and return a list of {@link JobResult}s.
+     *
+     * The output list of JobResults MUST match the inputs in the batch in
+     * size and order. The batch's buffer must not be used after this
+     * method returns - any writes to a channel must have completed.
+     */
+    List<JobResult<TOutput>> process(SerializedBatch batch);
+}
@@ -0,0 +1,23 @@
+package org.batch;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * How a {@link MicroBatcher}'s background thread waits for the next job.
+ *
+ * Blocking on the queue costs nothing while idle but adds a thread wake-up
+ * to the latency of every job that arrives while the thread is waiting.
+ * Spinning avoids the wake-up at the cost of CPU time, so deployments can
+ * trade a core for lower dispatch latency.
+ *
+ * Implementations are available in {@link org.batch.mb.MBWaitStrategies}.
+ */
+public interface WaitStrategy {
+    /**
+     * Take the head of the queue, waiting up to the timeout for an element
+     * to arrive.
+     *
+     * @return the head of the queue, or null if the timeout elapsed first.
+     */
+    <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException;
+}
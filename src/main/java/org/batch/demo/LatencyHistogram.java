@@ -0,0 +1,101 @@
+package org.batch.demo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe, fixed-memory histogram of latencies in nanoseconds.
+ *
+ * Values are counted in log-linear buckets - each power of two is split
+ * into {@value #SUB_BUCKET_COUNT} equal sub-buckets - so every value from
+ * one nanosecond up to {@link Long#MAX_VALUE} is recorded with a relative
+ * error under 1%, in a few thousand counters. This is the same scheme
+ * used by HdrHistogram, without pulling in the dependency.
+ *
+ * The exact maximum is tracked separately, so {@link #getMax()} is not
+ * subject to bucketing error.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int BUCKET_COUNT = Long.SIZE - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT * SUB_BUCKET_COUNT);
+        this.totalCount = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Record a latency. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexFor(value));
+        totalCount.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100.
+     * @return the latency at or below which the given percentage of
+     *         recorded values fall, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Bucket index for a value. Values below {@link #SUB_BUCKET_COUNT} get
+     * an exact bucket each; above that, the bucket is chosen by the position
+     * of the highest set bit, and the sub-bucket by the bits just below it.
+     */
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int bucket = shift + 1;
+        int subBucket = (int) ((value >>> shift) & SUB_BUCKET_MASK);
+        return bucket * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Largest value that maps to the given bucket index.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index & SUB_BUCKET_MASK;
+        long lowest = (1L << (shift + SUB_BUCKET_BITS)) | (subBucket << shift);
+        return lowest + (1L << shift) - 1;
+    }
+}
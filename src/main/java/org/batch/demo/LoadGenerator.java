@@ -0,0 +1,155 @@
+package org.batch.demo;
+
+import org.batch.BatchProcessor;
+import org.batch.JobResult;
+import org.batch.MicroBatcher;
+import org.batch.mb.MBBatcher;
+import org.batch.mb.MBBatcherOptions;
+import org.batch.mb.MBJob;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Open-loop load generator for a {@link MicroBatcher}.
+ *
+ * Unlike {@link Demo}, which submits jobs as fast as the submitting threads
+ * allow, jobs are submitted on a fixed schedule at the target arrival rate,
+ * regardless of how quickly earlier jobs complete. If the generator falls
+ * behind schedule, it submits the overdue jobs immediately, and their
+ * latency is still measured from their scheduled time - see
+ * {@link LoadReport} for why this matters.
+ *
+ * Override default values with command-line arguments:
+ *  - rate=R (submit R jobs per second)
+ *  - durationSeconds=D (submit jobs for D seconds)
+ *  - batchSize=Z (Set batch size = Z on MicroBatcher)
+ *  - timeoutMillis=T (set T millisecond timeout on job batch wait time)
+ *  - csv=path (also write the latency percentiles to a CSV file)
+ */
+public class LoadGenerator {
+    private static final Logger LOGGER = Logger.getLogger(LoadGenerator.class.getName());
+    private static final Duration COMPLETION_TIMEOUT = Duration.ofMinutes(1);
+
+    private final MicroBatcher<Integer, Integer> microBatcher;
+    private final double ratePerSecond;
+    private final Duration duration;
+
+    public LoadGenerator(MicroBatcher<Integer, Integer> microBatcher, double ratePerSecond, Duration duration) {
+        this.microBatcher = microBatcher;
+        this.ratePerSecond = ratePerSecond;
+        this.duration = duration;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rate = getArg(args, "rate", 100_000);
+        int durationSeconds = getArg(args, "durationSeconds", 10);
+        int batchSize = getArg(args, "batchSize", 100);
+        int timeoutMs = getArg(args, "timeoutMillis", 1);
+        String csvPath = getStringArg(args, "csv", null);
+
+        MBBatcherOptions options = new MBBatcherOptions.Builder()
+                .withBatchSize(batchSize)
+                .withTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        BatchProcessor<Integer, Integer> batchProcessor = new PlusOneBatchProcessor();
+        MicroBatcher<Integer, Integer> microBatcher = new MBBatcher<>(options, batchProcessor);
+
+        LOGGER.info(String.format("Generating %d jobs/s for %d seconds", rate, durationSeconds));
+        var report = new LoadGenerator(microBatcher, rate, Duration.ofSeconds(durationSeconds)).run();
+        microBatcher.shutdown();
+
+        LOGGER.info(report.summary());
+        if (csvPath != null) {
+            try (Writer writer = new FileWriter(csvPath)) {
+                report.writeCsv(writer);
+            }
+            LOGGER.info(String.format("Latency percentiles written to %s", csvPath));
+        }
+    }
+
+    /**
+     * Submit jobs at the target rate for the configured duration, then
+     * wait for them to complete.
+     */
+    public LoadReport run() {
+        long totalJobs = (long) (ratePerSecond * duration.toNanos() / 1e9);
+        double intervalNanos = 1e9 / ratePerSecond;
+        var correctedLatency = new LatencyHistogram();
+        var uncorrectedLatency = new LatencyHistogram();
+        var failed = new AtomicLong();
+        var lastCompletion = new AtomicLong();
+        var outstanding = new CountDownLatch((int) Math.min(totalJobs, Integer.MAX_VALUE));
+
+        long start = System.nanoTime();
+        for (long i = 0; i < totalJobs; i++) {
+            long scheduled = start + (long) (i * intervalNanos);
+            waitUntil(scheduled);
+
+            var job = new MBJob<Integer>();
+            job.setInput((int) i);
+            long submitted = System.nanoTime();
+            microBatcher.submit(job).thenAccept(jobResult -> {
+                long completed = System.nanoTime();
+                correctedLatency.record(completed - scheduled);
+                uncorrectedLatency.record(completed - submitted);
+                recordOutcome(jobResult, failed);
+                lastCompletion.accumulateAndGet(completed, Math::max);
+                outstanding.countDown();
+            });
+        }
+
+        try {
+            if (!outstanding.await(COMPLETION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOGGER.warning(String.format("%d jobs still outstanding", outstanding.getCount()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        var elapsed = Duration.ofNanos(Math.max(lastCompletion.get() - start, 0));
+        return new LoadReport(ratePerSecond, elapsed, totalJobs, failed.get(), correctedLatency, uncorrectedLatency);
+    }
+
+    private static void recordOutcome(JobResult<Integer> jobResult, AtomicLong failed) {
+        if (!jobResult.isSuccess()) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Park until the given {@link System#nanoTime()}, returning straight
+     * away if it has already passed.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Parse a command-line argument value, or return a default value if not
+     * found. See {@link Demo} for caveats.
+     */
+    private static int getArg(String[] args, String argName, int defaultValue) {
+        String value = getStringArg(args, argName, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String getStringArg(String[] args, String argName, String defaultValue) {
+        for (String arg : args) {
+            if (!arg.startsWith(argName + "=")) {
+                continue;
+            }
+            return arg.substring(argName.length() + 1);
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,118 @@
+package org.batch.demo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Results of a {@link LoadGenerator} run.
+ *
+ * Two latency distributions are reported. The corrected latency is
+ * measured from the time each job was scheduled to be submitted, so any
+ * time the generator spent falling behind schedule counts against the
+ * batcher - this is what a real client arriving at that rate would have
+ * experienced. The uncorrected latency is measured from the actual
+ * submission, which is what a closed-loop benchmark would report, and
+ * hides queueing delay (coordinated omission).
+ */
+public class LoadReport {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99, 100.0};
+
+    private final double targetRate;
+    private final Duration elapsed;
+    private final long submitted;
+    private final long failed;
+    private final LatencyHistogram correctedLatency;
+    private final LatencyHistogram uncorrectedLatency;
+
+    public LoadReport(double targetRate, Duration elapsed, long submitted, long failed,
+                      LatencyHistogram correctedLatency, LatencyHistogram uncorrectedLatency) {
+        this.targetRate = targetRate;
+        this.elapsed = elapsed;
+        this.submitted = submitted;
+        this.failed = failed;
+        this.correctedLatency = correctedLatency;
+        this.uncorrectedLatency = uncorrectedLatency;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return time from the first submission to the last completion.
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getCompleted() {
+        return correctedLatency.getTotalCount();
+    }
+
+    /**
+     * @return number of completed jobs whose result was not successful.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return completed jobs per second.
+     */
+    public double getThroughput() {
+        return getCompleted() / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+    }
+
+    public LatencyHistogram getCorrectedLatency() {
+        return correctedLatency;
+    }
+
+    public LatencyHistogram getUncorrectedLatency() {
+        return uncorrectedLatency;
+    }
+
+    /**
+     * Human-readable summary, with latencies in microseconds.
+     */
+    public String summary() {
+        return String.format(
+                "target %.0f jobs/s, achieved %.0f jobs/s, %d submitted, %d completed, %d failed%n"
+                        + "  corrected latency (us):   p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n"
+                        + "  uncorrected latency (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                targetRate, getThroughput(), submitted, getCompleted(), failed,
+                micros(correctedLatency.getValueAtPercentile(50)),
+                micros(correctedLatency.getValueAtPercentile(99)),
+                micros(correctedLatency.getValueAtPercentile(99.9)),
+                micros(correctedLatency.getMax()),
+                micros(uncorrectedLatency.getValueAtPercentile(50)),
+                micros(uncorrectedLatency.getValueAtPercentile(99)),
+                micros(uncorrectedLatency.getValueAtPercentile(99.9)),
+                micros(uncorrectedLatency.getMax()));
+    }
+
+    /**
+     * Write the latency percentiles as CSV, one row per percentile, with a
+     * header row. Latencies are in nanoseconds; the throughput columns are
+     * repeated on each row so that rows from several runs can be
+     * concatenated and compared.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("target_rate,throughput,percentile,corrected_latency_ns,uncorrected_latency_ns\n");
+        for (double percentile : PERCENTILES) {
+            writer.write(String.format(Locale.ROOT, "%.0f,%.1f,%s,%d,%d\n",
+                    targetRate, getThroughput(), percentile,
+                    correctedLatency.getValueAtPercentile(percentile),
+                    uncorrectedLatency.getValueAtPercentile(percentile)));
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+}
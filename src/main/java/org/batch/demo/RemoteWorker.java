@@ -0,0 +1,58 @@
+package org.batch.demo;
+
+import org.batch.mb.MBCodecs;
+import org.batch.transport.BatchProcessorServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * A worker process hosting {@link PlusOneBatchProcessor} for
+ * {@link org.batch.transport.RemoteBatchProcessor} clients.
+ *
+ * Prints the port it is listening on to standard output, then serves
+ * requests until the process is killed.
+ *
+ * Override default values with command-line arguments:
+ *  - port=P (listen on port P, default is an ephemeral port)
+ *  - workerThreads=W (process up to W batches concurrently)
+ */
+public class RemoteWorker {
+    private static final Logger LOGGER = Logger.getLogger(RemoteWorker.class.getName());
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = getArg(args, "port", 0);
+        int workerThreads = getArg(args, "workerThreads", Runtime.getRuntime().availableProcessors());
+
+        var server = new BatchProcessorServer.Builder<>(
+                new PlusOneBatchProcessor(), MBCodecs.integers(), MBCodecs.integers())
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                .withWorkerThreads(workerThreads)
+                .build();
+        var address = server.start();
+        LOGGER.info(String.format("Remote worker listening on %s", address));
+        System.out.println(address.getPort());
+        System.out.flush();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        new CountDownLatch(1).await();
+    }
+
+    /**
+     * Parse a command-line argument value, or return a default value if not
+     * found. See {@link Demo} for caveats.
+     */
+    private static int getArg(String[] args, String argName, int defaultValue) {
+        for (String arg : args) {
+            if (!arg.startsWith(argName + "=")) {
+                continue;
+            }
+            String[] parts = arg.split("=");
+            return Integer.parseInt(parts[1]);
+        }
+        return defaultValue;
+    }
+}
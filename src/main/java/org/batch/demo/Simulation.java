@@ -0,0 +1,198 @@
+package org.batch.demo;
+
+import org.batch.BatchProcessor;
+import org.batch.CompletionMode;
+import org.batch.MicroBatcherOptions;
+import org.batch.mb.MBBatcher;
+import org.batch.mb.MBBatcherOptions;
+import org.batch.mb.MBJob;
+import org.batch.mb.MBSimulatedRuntime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+
+/**
+ * Replays a trace of job arrivals through a {@link MBBatcher} on virtual
+ * time, using a {@link MBSimulatedRuntime}.
+ *
+ * The batch processor is modelled by its service time for a given batch
+ * size. Runs are deterministic and take milliseconds however long the
+ * trace, so batching options can be compared offline - e.g. how the
+ * batch size and linger timeout trade latency against batch fill at a
+ * given arrival rate.
+ *
+ * Traces are arrival times in nanoseconds from the start of the run,
+ * either generated with {@link #fixedRate} or {@link #poisson}, or
+ * recorded and read with {@link #readTrace}.
+ *
+ * Override default values with command-line arguments:
+ *  - rate=R (generate Poisson arrivals at R jobs per second)
+ *  - durationSeconds=D (generate arrivals for D seconds)
+ *  - trace=path (replay the arrivals in a file instead)
+ *  - batchSize=Z (Set batch size = Z on MicroBatcher)
+ *  - timeoutMillis=T (set T millisecond linger timeout)
+ *  - workers=W (simulate W worker threads, allowing W batches at once)
+ *  - batchMicros=B (each batch takes B microseconds to process...)
+ *  - jobMicros=J (...plus J microseconds per job)
+ */
+public class Simulation {
+    private static final Logger LOGGER = Logger.getLogger(Simulation.class.getName());
+
+    private final MicroBatcherOptions options;
+    private final int workerThreads;
+    private final IntFunction<Duration> serviceTime;
+
+    /**
+     * @param options Batcher options. The runtime is replaced with a
+     *                simulated one, and futures are completed inline.
+     * @param workerThreads Number of simulated worker threads.
+     * @param serviceTime Time taken to process a batch of the given size.
+     */
+    public Simulation(MicroBatcherOptions options, int workerThreads, IntFunction<Duration> serviceTime) {
+        this.options = options;
+        this.workerThreads = workerThreads;
+        this.serviceTime = serviceTime;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rate = getArg(args, "rate", 100_000);
+        int durationSeconds = getArg(args, "durationSeconds", 10);
+        String tracePath = getStringArg(args, "trace", null);
+        int batchSize = getArg(args, "batchSize", 100);
+        int timeoutMs = getArg(args, "timeoutMillis", 1);
+        int workers = getArg(args, "workers", 1);
+        int batchMicros = getArg(args, "batchMicros", 100);
+        int jobMicros = getArg(args, "jobMicros", 1);
+
+        long[] arrivals = tracePath != null
+                ? readTrace(Path.of(tracePath))
+                : poisson(rate, Duration.ofSeconds(durationSeconds), 1);
+        MBBatcherOptions options = new MBBatcherOptions.Builder()
+                .withBatchSize(batchSize)
+                .withTimeout(Duration.ofMillis(timeoutMs))
+                .withMaxConcurrentBatches(workers)
+                .build();
+        var simulation = new Simulation(options, workers,
+                size -> Duration.ofNanos((batchMicros + (long) jobMicros * size) * 1_000));
+
+        LOGGER.info(simulation.run(arrivals).summary());
+    }
+
+    /**
+     * Submit a job at each arrival time and run until all have been processed.
+     */
+    public SimulationReport run(long[] arrivals) {
+        var runtime = new MBSimulatedRuntime(workerThreads);
+        var latency = new LatencyHistogram();
+        var rejected = new AtomicLong();
+        var batches = new AtomicLong();
+        var fullBatches = new AtomicLong();
+
+        BatchProcessor<Integer, Integer> processor = jobs -> {
+            batches.incrementAndGet();
+            if (jobs.size() == options.batchSize()) {
+                fullBatches.incrementAndGet();
+            }
+            runtime.spend(serviceTime.apply(jobs.size()));
+            return new PlusOneBatchProcessor().process(jobs);
+        };
+        var batcher = new MBBatcher<>(new MBBatcherOptions.Builder(options)
+                .withRuntime(runtime)
+                .withCompletionMode(CompletionMode.INLINE)
+                .withCompletionExecutor(null)
+                .build(), processor);
+
+        for (int i = 0; i < arrivals.length; i++) {
+            var job = new MBJob<Integer>();
+            job.setInput(i);
+            runtime.schedule(Duration.ofNanos(arrivals[i]), () -> {
+                long submitted = runtime.nanoTime();
+                try {
+                    batcher.submit(job).thenAccept(jobResult -> latency.record(runtime.nanoTime() - submitted));
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                }
+            });
+        }
+        runtime.run();
+        batcher.shutdown(Duration.ZERO);
+        runtime.run();
+        batcher.shutdown();
+
+        return new SimulationReport(arrivals.length, rejected.get(), batches.get(), fullBatches.get(),
+                options.batchSize(), Duration.ofNanos(runtime.getLastWorkerEnd()), runtime.getBusyNanos(),
+                workerThreads, latency);
+    }
+
+    /**
+     * Arrivals evenly spaced at the given rate.
+     */
+    public static long[] fixedRate(double ratePerSecond, Duration duration) {
+        int count = (int) (ratePerSecond * duration.toNanos() / 1e9);
+        double intervalNanos = 1e9 / ratePerSecond;
+        long[] arrivals = new long[count];
+        for (int i = 0; i < count; i++) {
+            arrivals[i] = (long) (i * intervalNanos);
+        }
+        return arrivals;
+    }
+
+    /**
+     * Arrivals of a Poisson process at the given average rate, with
+     * exponentially distributed gaps. The same seed gives the same trace.
+     */
+    public static long[] poisson(double ratePerSecond, Duration duration, long seed) {
+        var random = new Random(seed);
+        double meanIntervalNanos = 1e9 / ratePerSecond;
+        return LongStream
+                .iterate((long) nextInterval(random, meanIntervalNanos),
+                        arrival -> arrival + (long) nextInterval(random, meanIntervalNanos))
+                .takeWhile(arrival -> arrival < duration.toNanos())
+                .toArray();
+    }
+
+    /**
+     * Read a recorded trace with one arrival time in nanoseconds per line.
+     * Blank lines and lines starting with '#' are ignored.
+     */
+    public static long[] readTrace(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        return lines.stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .mapToLong(Long::parseLong)
+                .toArray();
+    }
+
+    private static double nextInterval(Random random, double meanIntervalNanos) {
+        return -Math.log(1 - random.nextDouble()) * meanIntervalNanos;
+    }
+
+    /**
+     * Parse a command-line argument value, or return a default value if not
+     * found. See {@link Demo} for caveats.
+     */
+    private static int getArg(String[] args, String argName, int defaultValue) {
+        String value = getStringArg(args, argName, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String getStringArg(String[] args, String argName, String defaultValue) {
+        for (String arg : args) {
+            if (!arg.startsWith(argName + "=")) {
+                continue;
+            }
+            return arg.substring(argName.length() + 1);
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,111 @@
+package org.batch.demo;
+
+import java.time.Duration;
+
+/**
+ * Results of a {@link Simulation} run. All times are virtual.
+ */
+public class SimulationReport {
+    private final long submitted;
+    private final long rejected;
+    private final long batches;
+    private final long fullBatches;
+    private final int batchSize;
+    private final Duration elapsed;
+    private final long busyNanos;
+    private final int workerThreads;
+    private final LatencyHistogram latency;
+
+    public SimulationReport(long submitted, long rejected, long batches, long fullBatches, int batchSize,
+                            Duration elapsed, long busyNanos, int workerThreads, LatencyHistogram latency) {
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.batches = batches;
+        this.fullBatches = fullBatches;
+        this.batchSize = batchSize;
+        this.elapsed = elapsed;
+        this.busyNanos = busyNanos;
+        this.workerThreads = workerThreads;
+        this.latency = latency;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return number of jobs rejected because too many were pending.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getCompleted() {
+        return latency.getTotalCount();
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getFullBatches() {
+        return fullBatches;
+    }
+
+    /**
+     * @return average number of jobs per batch.
+     */
+    public double getMeanBatchSize() {
+        return batches == 0 ? 0 : (double) getCompleted() / batches;
+    }
+
+    /**
+     * @return average batch size as a fraction of the configured batch size.
+     */
+    public double getBatchFill() {
+        return getMeanBatchSize() / batchSize;
+    }
+
+    /**
+     * @return time from the start of the trace until the last batch was processed.
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return fraction of the elapsed time the workers spent processing batches.
+     */
+    public double getUtilization() {
+        return elapsed.isZero() ? 0 : busyNanos / ((double) elapsed.toNanos() * workerThreads);
+    }
+
+    /**
+     * @return time from submission to completion of each job.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Human-readable summary, with latencies in microseconds.
+     */
+    public String summary() {
+        return String.format(
+                "%d submitted, %d completed, %d rejected in %d ms%n"
+                        + "  batches: %d, %d full, mean size %.1f, fill %.1f%%%n"
+                        + "  utilization: %.1f%% of %d workers%n"
+                        + "  latency (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                submitted, getCompleted(), rejected, elapsed.toMillis(),
+                batches, fullBatches, getMeanBatchSize(), getBatchFill() * 100,
+                getUtilization() * 100, workerThreads,
+                micros(latency.getValueAtPercentile(50)),
+                micros(latency.getValueAtPercentile(99)),
+                micros(latency.getValueAtPercentile(99.9)),
+                micros(latency.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+}
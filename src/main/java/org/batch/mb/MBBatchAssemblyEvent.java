@@ -0,0 +1,37 @@
+package org.batch.mb;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event committed when a batch reaches the processor thread.
+ *
+ * The time the oldest job in the batch waited before processing is split
+ * into the time spent filling the batch, from the first to the last
+ * submission, and the delay from the last submission until dispatch -
+ * which includes waiting for the timeout or for earlier batches.
+ */
+@Name("org.batch.BatchAssembly")
+@Label("Batch Assembly")
+@Category("MicroBatching")
+@Description("A batch of jobs was assembled and dispatched to the batch processor")
+@StackTrace(false)
+final class MBBatchAssemblyEvent extends Event {
+    @Label("Batcher")
+    int batcherId;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Flush Trigger")
+    String trigger;
+
+    @Label("Fill Time")
+    @Description("Time from the first to the last job in the batch being submitted")
+    @Timespan
+    long fillTime;
+
+    @Label("Dispatch Delay")
+    @Description("Time from the last job in the batch being submitted to the batch being dispatched")
+    @Timespan
+    long dispatchDelay;
+}
@@ -0,0 +1,29 @@
+package org.batch.mb;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event spanning the completion of a batch's job futures, from the
+ * results being available until the last future has been completed.
+ *
+ * When completion is handed off to an executor, this includes the time
+ * spent waiting for the executor as well as the callers' dependent actions.
+ */
+@Name("org.batch.BatchCompletion")
+@Label("Batch Completion")
+@Category("MicroBatching")
+@Description("The job futures for a batch were completed")
+@StackTrace(false)
+final class MBBatchCompletionEvent extends Event {
+    @Label("Batcher")
+    int batcherId;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Flush Trigger")
+    String trigger;
+
+    @Label("Completion Mode")
+    String completionMode;
+}
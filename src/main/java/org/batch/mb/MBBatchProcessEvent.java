@@ -0,0 +1,26 @@
+package org.batch.mb;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event spanning a call to the {@link org.batch.BatchProcessor}.
+ */
+@Name("org.batch.BatchProcess")
+@Label("Batch Process")
+@Category("MicroBatching")
+@Description("A batch was processed by the batch processor")
+@StackTrace(false)
+final class MBBatchProcessEvent extends Event {
+    @Label("Batcher")
+    int batcherId;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Flush Trigger")
+    String trigger;
+
+    @Label("Failed")
+    @Description("The batch processor threw an exception")
+    boolean failed;
+}
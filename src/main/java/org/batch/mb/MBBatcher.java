@@ -1,11 +1,21 @@
 package org.batch.mb;
 
+import jdk.jfr.FlightRecorder;
 import org.batch.*;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * MicroBatcher implementation.
@@ -26,83 +36,627 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * a batch, it invokes the supplied {@link BatchProcessor} and marks all the
  * related CompletableFutures as completed.
  *
+ * Futures are completed on the batching thread by default, which means the
+ * callers' dependent actions run there too. The options can select a
+ * {@link CompletionMode} that moves completion onto an executor instead.
+ *
+ * {@link #flush()} dispatches the jobs submitted so far without waiting for a
+ * full batch or the timeout. The background thread is woken by placing a
+ * marker job on the queue, which ends the batch being accumulated.
+ *
+ * If the options specify a {@link BatcherRuntime}, no background thread is
+ * created. Instead, submitting a job either dispatches a full batch to the
+ * runtime's worker pool, or arms a linger deadline on the runtime's timer
+ * which dispatches the partial batch once it expires.
+ *
+ * The batch size, timeout and limits can be changed on a running batcher
+ * with {@link #reconfigure}. The options are held in a volatile field and
+ * read once at the start of each batch, so a change applies from the
+ * next batch onwards without stopping the batcher.
+ *
+ * By default one batch is processed at a time. When the options allow
+ * more, batches are handed to a thread pool (or the runtime's workers)
+ * and the background thread carries on collecting the next batch.
+ *
+ * If a {@link JobCombiner} is supplied, jobs with the same key are merged
+ * when the batch is processed, so the processor sees one job per key.
+ * The batch size still counts the jobs as submitted.
+ *
+ * If the options enable fair queueing, the queue is replaced by a
+ * {@link MBFairQueue} with a lane per tenant, so that jobs submitted with
+ * {@link #submit(Job, String)} are batched in weighted round-robin order
+ * between tenants. A tenant flooding the batcher then only delays the
+ * others by its share of each batch.
+ *
+ * If {@link MBSpillOptions} are supplied, the queue is a {@link MBSpillQueue},
+ * which holds a limited number of jobs on the heap and writes the rest of
+ * the backlog to memory-mapped files, reading them back in order as batches
+ * are taken. This can't be combined with fair queueing.
+ *
+ * If a {@link MBWriteAheadLog} is supplied, each job is appended to it
+ * before {@link #submit} returns, and marked done once its batch has been
+ * processed. Jobs left unfinished by a previous run are replayed when the
+ * batcher is created, so jobs are processed at least once across crashes.
+ *
+ * On a runtime, job timestamps come from {@link BatcherRuntime#nanoTime()},
+ * so that a {@link MBSimulatedRuntime} can run the batcher on virtual time.
+ *
+ * Each batch is recorded with Java Flight Recorder events for its
+ * assembly, processing and completion, tagged with the batch size and
+ * what triggered the dispatch. A per-job event is also available but
+ * disabled by default. Events cost next to nothing unless a recording
+ * is running with them enabled.
+ *
  * @param <TInput> Type parameter for job inputs.
  * @param <TOutput> Type parameter for job outputs.
  */
 public class MBBatcher<TInput, TOutput> implements MicroBatcher<TInput, TOutput> {
+    /**
+     * Tenant of jobs submitted without one.
+     */
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final AtomicInteger BATCHER_COUNT = new AtomicInteger();
 
-    private final MicroBatcherOptions options;
+    static {
+        // The first use of a JFR event sets up the recorder's metadata,
+        // which takes long enough to hold up the first batch noticeably.
+        FlightRecorder.register(MBBatchAssemblyEvent.class);
+        FlightRecorder.register(MBBatchProcessEvent.class);
+        FlightRecorder.register(MBBatchCompletionEvent.class);
+        FlightRecorder.register(MBJobEvent.class);
+    }
+
+    private final int batcherId;
+    private volatile MicroBatcherOptions options;
     private final BatchProcessor<TInput, TOutput> processor;
+    private final JobCombiner<TInput> combiner;
+    private final MBJobCompleter<TOutput> completer;
     private final BlockingQueue<MBPendingJob<TInput, TOutput>> pending;
+    private final BatcherRuntime runtime;
     private final ExecutorService executorService;
-    private final Future<?> backgroundSubmitter;
+    private final ExecutorService batchExecutor;
+    private final MBConcurrencyLimit concurrency;
+    private final CompletableFuture<Void> backgroundSubmitter;
     private final AtomicBoolean isShutdown;
+    private final AtomicBoolean isStopped;
+    private final ReadWriteLock shutdownLock;
+    private final MBPendingJob<TInput, TOutput> wakeUp;
+    private final MBWriteAheadLog<TInput> log;
+    private final List<CompletableFuture<JobResult<TOutput>>> recoveredJobs;
+
+    // Dedicated thread state - see queueWakeUp().
+    private final AtomicBoolean wakeUpQueued;
+    private final AtomicLong submittedJobs;
+    private final AtomicLong flushedUpTo;
+    private final AtomicBoolean flushPending;
+    private volatile long wakeUpCovers;
+    private volatile boolean awaitingFirstJob;
+
+    // Runtime mode state - see drainPendingJobs().
+    private final AtomicBoolean drainScheduled;
+    private final AtomicReference<MBFlushTrigger> flushRequested;
+    private final CompletableFuture<Void> drained;
+    private final Object lingerLock;
+    private volatile BatcherRuntime.Timeout linger;
+    private long lingerGeneration;
+    private boolean resourcesReleased;
 
     public MBBatcher(MicroBatcherOptions options, BatchProcessor<TInput, TOutput> processor) {
+        this(options, processor, null);
+    }
+
+    /**
+     * @param combiner Merges jobs with the same key before they are
+     *                 processed, or null to process every job as submitted.
+     */
+    public MBBatcher(MicroBatcherOptions options, BatchProcessor<TInput, TOutput> processor,
+                     JobCombiner<TInput> combiner) {
+        this(options, processor, combiner, null);
+    }
+
+    /**
+     * @param combiner Merges jobs with the same key before they are
+     *                 processed, or null to process every job as submitted.
+     * @param spill Where to spill the backlog beyond a number of jobs held
+     *              on the heap, or null to hold every job on the heap.
+     * @throws IllegalArgumentException if spilling is combined with fair queueing.
+     */
+    public MBBatcher(MicroBatcherOptions options, BatchProcessor<TInput, TOutput> processor,
+                     JobCombiner<TInput> combiner, MBSpillOptions<TInput> spill) {
+        this(options, processor, combiner, spill, null);
+    }
+
+    /**
+     * @param combiner Merges jobs with the same key before they are
+     *                 processed, or null to process every job as submitted.
+     * @param spill Where to spill the backlog beyond a number of jobs held
+     *              on the heap, or null to hold every job on the heap.
+     * @param log Log to make submitted jobs durable in, or null. Unfinished
+     *            jobs found in the log are replayed straight away - see
+     *            {@link #getRecoveredJobs()}. The batcher closes the log
+     *            when it shuts down.
+     * @throws IllegalArgumentException if spilling is combined with fair queueing.
+     */
+    public MBBatcher(MicroBatcherOptions options, BatchProcessor<TInput, TOutput> processor,
+                     JobCombiner<TInput> combiner, MBSpillOptions<TInput> spill, MBWriteAheadLog<TInput> log) {
+        validate(options);
+        if (spill != null && options.tenantWeights().isPresent()) {
+            throw new IllegalArgumentException("Spilling to disk cannot be combined with fair queueing");
+        }
+        this.batcherId = BATCHER_COUNT.incrementAndGet();
         this.options = options;
         this.processor = processor;
-        this.pending = new LinkedBlockingQueue<>();
+        this.combiner = combiner;
+        this.completer = new MBJobCompleter<>(options);
+        this.wakeUp = new MBPendingJob<>(null);
+        this.wakeUpQueued = new AtomicBoolean(false);
+        this.submittedJobs = new AtomicLong();
+        this.flushedUpTo = new AtomicLong();
+        this.flushPending = new AtomicBoolean(false);
+        this.log = log;
+        this.pending = spill != null ? new MBSpillQueue<>(spill, log) : createQueue(options);
         this.isShutdown = new AtomicBoolean(false);
-        this.executorService = Executors.newSingleThreadExecutor();
-        this.backgroundSubmitter = executorService.submit(this::processPendingJobs);
+        this.isStopped = new AtomicBoolean(false);
+        this.shutdownLock = new ReentrantReadWriteLock();
+        this.drainScheduled = new AtomicBoolean(false);
+        this.flushRequested = new AtomicReference<>();
+        this.drained = new CompletableFuture<>();
+        this.lingerLock = new Object();
+        this.concurrency = new MBConcurrencyLimit(options.maxConcurrentBatches());
+        this.runtime = options.runtime().orElse(null);
+        if (runtime == null) {
+            // Only starts threads if more than one batch is allowed in flight.
+            this.batchExecutor = Executors.newCachedThreadPool();
+            this.executorService = Executors.newSingleThreadExecutor();
+            this.backgroundSubmitter = CompletableFuture.runAsync(this::processPendingJobs, executorService);
+        } else {
+            // Completed by the dispatch task that drains the queue after shutdown.
+            this.batchExecutor = null;
+            this.executorService = null;
+            this.backgroundSubmitter = drained;
+        }
+        this.recoveredJobs = replayRecoveredJobs();
+    }
+
+    /**
+     * Queue the jobs the log recovered from a previous run. They are
+     * already in the log, so they aren't appended again.
+     */
+    private List<CompletableFuture<JobResult<TOutput>>> replayRecoveredJobs() {
+        if (log == null) {
+            return List.of();
+        }
+        List<CompletableFuture<JobResult<TOutput>>> futures = new ArrayList<>();
+        log.drainRecovered().forEach((logId, input) -> {
+            var job = new MBJob<TInput>();
+            job.setInput(input);
+            var pendingJob = new MBPendingJob<TInput, TOutput>(job, DEFAULT_TENANT, nanoTime(),
+                    new CompletableFuture<>(), logId);
+            pending.add(pendingJob);
+            submittedJobs.incrementAndGet();
+            if (runtime != null) {
+                onJobSubmitted();
+            }
+            futures.add(pendingJob.getJobResult());
+        });
+        return List.copyOf(futures);
+    }
+
+    /**
+     * Create the heap-only pending queue - a {@link MBFairQueue} if tenants are
+     * weighted, otherwise a FIFO queue. The wake-up marker has no tenant,
+     * so a flush ends the batch once every tenant's queued jobs are taken.
+     */
+    private BlockingQueue<MBPendingJob<TInput, TOutput>> createQueue(MicroBatcherOptions options) {
+        return options.tenantWeights()
+                .<BlockingQueue<MBPendingJob<TInput, TOutput>>>map(weights -> new MBFairQueue<>(
+                        pendingJob -> pendingJob == wakeUp ? null : pendingJob.getTenantId(), weights))
+                .orElseGet(LinkedBlockingQueue::new);
+    }
+
+    /**
+     * Submit a job for the {@link #DEFAULT_TENANT}.
+     *
+     * @see #submit(Job, String)
+     */
+    @Override
+    public CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job) {
+        return submit(job, DEFAULT_TENANT);
     }
 
     /**
      * Submit a job to be processed once a complete batch is accumulated.
      *
-     * Cannot be called after {@link #shutdown()} has been invoked.
+     * Cannot be called after {@link #shutdown()} has been invoked. A
+     * submit that races with shutdown either has its job processed before
+     * shutdown completes, or is rejected.
+     *
+     * If the number of queued jobs has reached the configured maximum,
+     * the job is rejected. The limit is checked before the job is added,
+     * so concurrent submitters may overshoot it slightly.
      *
      * The {@link Job} is wrapped in {@link MBPendingJob} which constructs
      * the CompletableFuture and links it with the input job. The pending
      * job object is then placed onto the pending queue.
      *
+     * The tenant only affects the order jobs are batched in when fair
+     * queueing is enabled.
+     *
+     * With a write-ahead log, the job is appended to the log and this
+     * method blocks until the log has been forced to disk. Submitters
+     * arriving meanwhile share the next force.
+     *
      * @param job The job to be processed.
+     * @param tenantId Tenant the job belongs to, or null for the {@link #DEFAULT_TENANT}.
      * @return {@link CompletableFuture} when completed, will hold a
      *         {@link JobResult} with the results from the BatchProcessor.
+     * @throws RejectedExecutionException if too many jobs are queued.
      */
     @Override
-    public CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job) {
-        if (isShutdown.get()) {
-            throw new IllegalCallerException("Cannot submit jobs after shutdown!");
-        }
+    public CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job, String tenantId) {
+        MBPendingJob<TInput, TOutput> pendingJob;
+        // Held until the job is queued, so that shutdown can't begin
+        // between the check and the job reaching the queue.
+        shutdownLock.readLock().lock();
+        try {
+            if (isShutdown.get()) {
+                throw new IllegalCallerException("Cannot submit jobs after shutdown!");
+            }
+            if (pendingJobCount() >= options.maxPendingJobs()) {
+                throw new RejectedExecutionException("Too many pending jobs, limit is " + options.maxPendingJobs());
+            }
 
-        var pendingJob = new MBPendingJob<TInput, TOutput>(job);
-        pending.add(pendingJob);
+            long logId = log != null ? log.append(job.getInput()) : MBPendingJob.NOT_LOGGED;
+            pendingJob = new MBPendingJob<>(job, Objects.requireNonNullElse(tenantId, DEFAULT_TENANT),
+                    nanoTime(), new CompletableFuture<>(), logId);
+            try {
+                pending.add(pendingJob);
+            } catch (RuntimeException e) {
+                if (log != null) {
+                    // The caller sees the job rejected, so it mustn't be replayed.
+                    log.markDone(logId);
+                }
+                throw e;
+            }
+            submittedJobs.incrementAndGet();
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        if (runtime != null) {
+            onJobSubmitted();
+        }
         return pendingJob.getJobResult();
     }
 
+    /**
+     * Dispatch all jobs submitted so far, without waiting for a full
+     * batch or for the timeout to expire.
+     *
+     * Does not wait for the jobs to be processed.
+     */
+    @Override
+    public void flush() {
+        if (runtime != null) {
+            flushRequested.set(MBFlushTrigger.FLUSH);
+            scheduleDrain();
+        } else {
+            flushedUpTo.accumulateAndGet(submittedJobs.get(), Math::max);
+            flushPending.set(true);
+            queueWakeUp();
+        }
+    }
+
+    /**
+     * Queue the wake-up marker for the background thread, unless it is
+     * already queued. At most one marker is queued at a time, so repeated
+     * flushes don't leave markers behind to end later batches early.
+     *
+     * The marker ends the batch being collected once the jobs submitted
+     * before it have been taken. If a flush arrives while it is queued,
+     * after more jobs have been submitted, the marker is queued again
+     * once taken - see {@link #onWakeUpTaken()}.
+     *
+     * The marker is also queued by shutdown, and by {@link #reconfigure}
+     * to restart a batch that has no jobs yet. Only a marker queued for a
+     * flush ends a batch that already has jobs.
+     */
+    private void queueWakeUp() {
+        if (wakeUpQueued.compareAndSet(false, true)) {
+            wakeUpCovers = submittedJobs.get();
+            pending.add(wakeUp);
+        }
+    }
+
+    /**
+     * @return true if the marker was queued for a flush.
+     */
+    private boolean onWakeUpTaken() {
+        boolean flush = flushPending.getAndSet(false);
+        wakeUpQueued.set(false);
+        if (flushedUpTo.get() > wakeUpCovers) {
+            flushPending.set(true);
+            queueWakeUp();
+        }
+        return flush;
+    }
+
+    /**
+     * @return number of jobs queued, not counting the wake-up marker.
+     */
+    private int pendingJobCount() {
+        int size = pending.size();
+        return wakeUpQueued.get() ? Math.max(size - 1, 0) : size;
+    }
+
+    /**
+     * Change the options of a running batcher.
+     *
+     * The batch size, timeout, wait strategy, limits and tenant weights
+     * can be changed, but fair queueing can't be turned on or off.
+     * They apply from the next batch - a batch being collected keeps the
+     * size and timeout it started with, and lowering the concurrency limit
+     * lets batches in flight finish. If the background thread is still
+     * waiting for the first job of a batch, it is woken with the wake-up
+     * marker so that the new size and timeout apply to that batch. On a
+     * runtime, an armed linger deadline keeps its original timeout.
+     *
+     * @throws IllegalArgumentException if a size or limit is not positive,
+     *         or the runtime, completion or fair queueing options differ
+     *         from those the batcher was created with.
+     */
+    public synchronized void reconfigure(MicroBatcherOptions newOptions) {
+        validate(newOptions);
+        if (!Objects.equals(runtime, newOptions.runtime().orElse(null))
+                || options.completionMode() != newOptions.completionMode()
+                || !options.completionExecutor().equals(newOptions.completionExecutor())) {
+            throw new IllegalArgumentException("Runtime and completion options cannot be changed on a running batcher");
+        }
+        if (options.tenantWeights().isPresent() != newOptions.tenantWeights().isPresent()) {
+            throw new IllegalArgumentException("Fair queueing cannot be turned on or off on a running batcher");
+        }
+        options = newOptions;
+        newOptions.tenantWeights().ifPresent(weights -> ((MBFairQueue<?>) pending).setWeights(weights));
+        concurrency.setLimit(newOptions.maxConcurrentBatches());
+        if (runtime == null && awaitingFirstJob) {
+            // Otherwise it would wait out the old timeout. If a job is
+            // taken first, the marker is skipped - see getPendingJobs().
+            queueWakeUp();
+        }
+        if (runtime != null && !pending.isEmpty()) {
+            // A smaller batch size or a higher concurrency limit may allow
+            // queued jobs to be dispatched now.
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * @return the ID that identifies this batcher in its JFR events.
+     */
+    public int getBatcherId() {
+        return batcherId;
+    }
+
+    /**
+     * @return the futures of the jobs replayed from the write-ahead log
+     *         when the batcher was created, in the order they were logged.
+     *         Replayed jobs have no tenant and are queued as
+     *         {@link #DEFAULT_TENANT}.
+     */
+    public List<CompletableFuture<JobResult<TOutput>>> getRecoveredJobs() {
+        return recoveredJobs;
+    }
+
+    /**
+     * @return the options currently in effect.
+     */
+    public MicroBatcherOptions getOptions() {
+        return options;
+    }
+
+    private static void validate(MicroBatcherOptions options) {
+        if (options.batchSize() < 1 || options.maxConcurrentBatches() < 1 || options.maxPendingJobs() < 1) {
+            throw new IllegalArgumentException("Batch size, concurrent batches and pending jobs must be positive");
+        }
+    }
+
     /**
      * This method is invoked in the background thread to constantly
      * poll the pending queue for jobs and submit them as batches.
      *
      * Will exit after draining the queue after {@link #shutdown()} is
-     * invoked.
+     * invoked, or straight away after {@link #shutdownNow()}, once any
+     * batches being processed on other threads have finished.
+     */
+    private void processPendingJobs() {
+        while (!isStopped.get() && (!isShutdown.get() || !pending.isEmpty())) {
+            // Set before the options are read, so a concurrent reconfigure
+            // either is seen here or sees the flag and wakes this thread.
+            awaitingFirstJob = true;
+            var batchOptions = options;
+            List<MBPendingJob<TInput, TOutput>> pendingJobs = new ArrayList<>(batchOptions.batchSize());
+            var trigger = getPendingJobs(batchOptions, pendingJobs);
+            if (!pendingJobs.isEmpty()) {
+                dispatchBatch(pendingJobs, trigger);
+            }
+        }
+        try {
+            concurrency.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Process a batch on the background thread, or hand it to the batch
+     * thread pool if more than one batch may be processed at once. Waits
+     * while the concurrency limit is reached.
+     */
+    private void dispatchBatch(List<MBPendingJob<TInput, TOutput>> pendingJobs, MBFlushTrigger trigger) {
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            // The jobs have already been taken off the queue, so don't drop them.
+            Thread.currentThread().interrupt();
+            processBatch(pendingJobs, trigger);
+            return;
+        }
+        if (concurrency.getLimit() == 1) {
+            processAndRelease(pendingJobs, trigger);
+        } else {
+            batchExecutor.execute(() -> processAndRelease(pendingJobs, trigger));
+        }
+    }
+
+    private void processAndRelease(List<MBPendingJob<TInput, TOutput>> pendingJobs, MBFlushTrigger trigger) {
+        try {
+            processBatch(pendingJobs, trigger);
+        } finally {
+            concurrency.release();
+        }
+    }
+
+    /**
+     * Invoke the {@link BatchProcessor} with a batch of pending jobs and
+     * complete their futures with the results.
      *
      * If the {@link BatchProcessor} throws an exception, the entire
      * batch is marked as a failure with details of the exception thrown.
      * Clients can choose the appropriate strategy accordingly - whether
      * to retry or fail affected jobs.
      */
-    private void processPendingJobs() {
-        while (!isShutdown.get() || !pending.isEmpty()) {
-            List<MBPendingJob<TInput, TOutput>> pendingJobs = getPendingJobs(options.batchSize());
-            List<Job<TInput>> jobs = pendingJobs.stream()
-                    .map(MBPendingJob::getJob)
+    private void processBatch(List<MBPendingJob<TInput, TOutput>> pendingJobs, MBFlushTrigger trigger) {
+        long processStart = nanoTime();
+        recordAssembly(pendingJobs, trigger, processStart);
+        List<CompletableFuture<JobResult<TOutput>>> futures = pendingJobs.stream()
+                .map(MBPendingJob::getJobResult)
+                .toList();
+        var processEvent = new MBBatchProcessEvent();
+        processEvent.begin();
+        List<JobResult<TOutput>> results;
+        try {
+            results = process(pendingJobs);
+        } catch (Exception e) {
+            // If BatchProcessor throws an exception, all jobs in the batch
+            // report an exceptional error.
+            processEvent.failed = true;
+            results = pendingJobs.stream()
+                    .<JobResult<TOutput>>map(pendingJob -> {
+                        MBJobResult<TOutput> jobResult = new MBJobResult<>();
+                        jobResult.setException(e);
+                        return jobResult;
+                    })
                     .toList();
-            try {
-                var results = processor.process(jobs);
-                for (int i = 0; i < results.size(); i++) {
-                    pendingJobs.get(i).getJobResult().complete(results.get(i));
+        }
+        processEvent.end();
+        if (processEvent.shouldCommit()) {
+            processEvent.batcherId = batcherId;
+            processEvent.batchSize = pendingJobs.size();
+            processEvent.trigger = trigger.name();
+            processEvent.commit();
+        }
+        recordJobs(pendingJobs, trigger, processStart, nanoTime());
+        if (log != null) {
+            log.markDone(pendingJobs.stream().mapToLong(MBPendingJob::getLogId).toArray());
+        }
+
+        var completionEvent = new MBBatchCompletionEvent();
+        completionEvent.batcherId = batcherId;
+        completionEvent.trigger = trigger.name();
+        completer.complete(futures, results, completionEvent);
+    }
+
+    /**
+     * Pass the jobs to the {@link BatchProcessor}, merging them first if
+     * there is a combiner.
+     *
+     * @return the results for the jobs as submitted - the result of a
+     *         merged job is repeated for each job merged into it.
+     */
+    private List<JobResult<TOutput>> process(List<MBPendingJob<TInput, TOutput>> pendingJobs) {
+        if (combiner == null) {
+            return MBJobCompleter.checkResults(pendingJobs.size(), processor.process(pendingJobs.stream()
+                    .map(MBPendingJob::getJob)
+                    .toList()));
+        }
+
+        List<Job<TInput>> combined = new ArrayList<>(pendingJobs.size());
+        Map<Object, Integer> combinedIndex = new HashMap<>();
+        int[] jobIndex = new int[pendingJobs.size()];
+        for (int i = 0; i < pendingJobs.size(); i++) {
+            Job<TInput> job = pendingJobs.get(i).getJob();
+            Object key = job.getInput() == null ? null : combiner.key(job.getInput());
+            Integer index = key == null ? null : combinedIndex.get(key);
+            if (index == null) {
+                index = combined.size();
+                combined.add(job);
+                if (key != null) {
+                    combinedIndex.put(key, index);
                 }
-            } catch (Exception e) {
-                // If BatchProcessor throws an exception, all jobs in the batch
-                // report an exceptional error.
-                pendingJobs.forEach(pendingJob -> {
-                    MBJobResult<TOutput> jobResult = new MBJobResult<>();
-                    jobResult.setException(e);
-                    pendingJob.getJobResult().complete(jobResult);
-                });
+            } else {
+                var merged = new MBJob<TInput>();
+                merged.setInput(combiner.merge(combined.get(index).getInput(), job.getInput()));
+                combined.set(index, merged);
             }
+            jobIndex[i] = index;
+        }
+
+        List<JobResult<TOutput>> combinedResults = MBJobCompleter.checkResults(combined.size(), processor.process(combined));
+        List<JobResult<TOutput>> results = new ArrayList<>(pendingJobs.size());
+        for (int index : jobIndex) {
+            results.add(combinedResults.get(index));
+        }
+        return results;
+    }
+
+    /**
+     * Time from the runtime's clock, or the system clock for a dedicated thread.
+     */
+    private long nanoTime() {
+        return runtime != null ? runtime.nanoTime() : System.nanoTime();
+    }
+
+    /**
+     * Commit a {@link MBBatchAssemblyEvent}. The earliest and latest
+     * submissions bound the time spent filling the batch - with fair
+     * queueing, these aren't necessarily the first and last jobs.
+     */
+    private void recordAssembly(List<MBPendingJob<TInput, TOutput>> pendingJobs, MBFlushTrigger trigger,
+                                long dispatchNanos) {
+        var event = new MBBatchAssemblyEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        long firstSubmit = Long.MAX_VALUE;
+        long lastSubmit = Long.MIN_VALUE;
+        for (var pendingJob : pendingJobs) {
+            firstSubmit = Math.min(firstSubmit, pendingJob.getSubmitNanos());
+            lastSubmit = Math.max(lastSubmit, pendingJob.getSubmitNanos());
+        }
+        event.batcherId = batcherId;
+        event.batchSize = pendingJobs.size();
+        event.trigger = trigger.name();
+        event.fillTime = lastSubmit - firstSubmit;
+        event.dispatchDelay = dispatchNanos - lastSubmit;
+        event.commit();
+    }
+
+    /**
+     * Commit a {@link MBJobEvent} for each job, if enabled.
+     */
+    private void recordJobs(List<MBPendingJob<TInput, TOutput>> pendingJobs, MBFlushTrigger trigger,
+                            long processStart, long processEnd) {
+        if (!new MBJobEvent().isEnabled()) {
+            return;
+        }
+        for (var pendingJob : pendingJobs) {
+            var event = new MBJobEvent();
+            event.batcherId = batcherId;
+            event.batchSize = pendingJobs.size();
+            event.trigger = trigger.name();
+            event.queueTime = processStart - pendingJob.getSubmitNanos();
+            event.processTime = processEnd - processStart;
+            event.commit();
         }
     }
 
@@ -111,33 +665,206 @@ public class MBBatcher<TInput, TOutput> implements MicroBatcher<TInput, TOutput>
      * jobs are available or until the specified timeout is reached.
      *
      * If the timeout is reached before a full batch is accumulated,
-     * a partial or empty batch will be returned.
+     * a partial or empty batch will be returned. The batch also ends
+     * early when the wake-up marker placed by {@link #flush()} or
+     * shutdown is reached.
      *
-     * @param batchSize Maximum number of jobs to fetch.
-     * @return List of pending jobs, up to the specified batch size.
+     * @param batchOptions Options in effect for this batch.
+     * @param pendingJobs List to add the pending jobs to, up to the batch size.
+     * @return what ended the batch.
      */
-    private List<MBPendingJob<TInput, TOutput>> getPendingJobs(int batchSize) {
-        List<MBPendingJob<TInput, TOutput>> pendingJobs = new ArrayList<>(batchSize);
-        for (int i = 0; i < batchSize; i++) {
+    private MBFlushTrigger getPendingJobs(MicroBatcherOptions batchOptions,
+                                          List<MBPendingJob<TInput, TOutput>> pendingJobs) {
+        while (pendingJobs.size() < batchOptions.batchSize()) {
+            MBPendingJob<TInput, TOutput> pendingJob;
             try {
-                var pendingJob = getPendingJob();
-                if (pendingJob == null) {
-                    break;
-                }
-                pendingJobs.add(pendingJob);
+                pendingJob = getPendingJob(batchOptions);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                break;
+                return MBFlushTrigger.SHUTDOWN;
+            }
+            boolean flush = pendingJob == wakeUp && onWakeUpTaken();
+            if (isShutdown.get() && (pendingJob == null || pendingJob == wakeUp)) {
+                return MBFlushTrigger.SHUTDOWN;
+            } else if (pendingJob == null) {
+                return MBFlushTrigger.TIMEOUT;
+            } else if (pendingJob == wakeUp) {
+                if (flush || pendingJobs.isEmpty()) {
+                    return MBFlushTrigger.FLUSH;
+                }
+                // Queued by reconfigure() after this batch's first job was taken.
+                continue;
             }
+            pendingJobs.add(pendingJob);
+            awaitingFirstJob = false;
         }
-        return pendingJobs;
+        return MBFlushTrigger.FULL;
     }
 
     /**
      * Get the next pending job, or null if the timeout is reached.
+     *
+     * The configured {@link WaitStrategy} decides whether the thread
+     * blocks or spins while waiting. Once shutting down, there's nothing
+     * to wait for, so whatever is left is taken without waiting.
+     */
+    private MBPendingJob<TInput, TOutput> getPendingJob(MicroBatcherOptions batchOptions) throws InterruptedException {
+        if (isShutdown.get()) {
+            return pending.poll();
+        }
+        return batchOptions.waitStrategy().poll(pending, batchOptions.timeout().toNanos());
+    }
+
+    /**
+     * Called after each submission when running on a shared runtime.
+     *
+     * A full batch is dispatched to the runtime's worker pool straight
+     * away, otherwise a linger deadline is armed so that the partial
+     * batch is dispatched once the timeout elapses.
+     */
+    private void onJobSubmitted() {
+        if (pending.size() >= options.batchSize()) {
+            scheduleDrain();
+        } else {
+            armLinger();
+        }
+    }
+
+    /**
+     * Queue a dispatch task on the runtime, unless one is already
+     * queued or running for this batcher.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            runtime.execute(this::drainPendingJobs);
+        }
+    }
+
+    /**
+     * Dispatch task run on a runtime worker thread.
+     *
+     * Processes full batches until the queue holds less than a batch.
+     * The remainder is processed as well if the linger deadline has
+     * expired, a flush was requested or the batcher is shutting down,
+     * otherwise the deadline is re-armed for it.
+     *
+     * If more than one batch may be processed at once, each batch is
+     * handed to its own runtime task. Once the limit is reached, the
+     * remaining jobs wait for a batch in flight to complete, which
+     * schedules another dispatch task.
+     *
+     * Only one dispatch task runs per batcher at a time. Submissions
+     * that race with the end of this task are picked up by the checks
+     * made after the drainScheduled flag is cleared.
+     */
+    private void drainPendingJobs() {
+        try {
+            MBFlushTrigger partialTrigger = flushRequested.getAndSet(null);
+            boolean dispatched = false;
+            while (!isStopped.get() && !pending.isEmpty()) {
+                int batchSize = options.batchSize();
+                if (pending.size() < batchSize && partialTrigger == null && !isShutdown.get()) {
+                    break;
+                }
+                if (!concurrency.tryAcquire()) {
+                    if (partialTrigger != null) {
+                        flushRequested.compareAndSet(null, partialTrigger);
+                    }
+                    break;
+                }
+                List<MBPendingJob<TInput, TOutput>> pendingJobs = new ArrayList<>(batchSize);
+                pending.drainTo(pendingJobs, batchSize);
+                if (pendingJobs.isEmpty()) {
+                    // Taken by shutdownNow() in the meantime.
+                    concurrency.release();
+                    break;
+                }
+                if (!dispatched) {
+                    // The linger deadline belonged to the jobs just taken.
+                    // Disarm it before processing them, so that jobs
+                    // submitted meanwhile get a deadline of their own.
+                    disarmLinger();
+                    dispatched = true;
+                }
+                MBFlushTrigger trigger = pendingJobs.size() == batchSize ? MBFlushTrigger.FULL
+                        : partialTrigger != null ? partialTrigger : MBFlushTrigger.SHUTDOWN;
+                if (concurrency.getLimit() == 1) {
+                    processAndRelease(pendingJobs, trigger);
+                } else {
+                    runtime.execute(() -> {
+                        processAndRelease(pendingJobs, trigger);
+                        onBatchCompleted();
+                    });
+                }
+            }
+        } finally {
+            drainScheduled.set(false);
+        }
+
+        boolean ready = pending.size() >= options.batchSize()
+                || (!pending.isEmpty() && (flushRequested.get() != null || isShutdown.get()));
+        if (ready && concurrency.hasCapacity()) {
+            scheduleDrain();
+        } else if (!pending.isEmpty()) {
+            armLinger();
+        } else if (isShutdown.get() && concurrency.isIdle()) {
+            drained.complete(null);
+        }
+    }
+
+    /**
+     * Runs on a runtime worker after a batch processed in its own task.
+     * Dispatches jobs held back by the concurrency limit, or finishes
+     * shutting down if this was the last batch. The permit has been
+     * released first, so either this dispatch task or the one currently
+     * running sees it.
+     */
+    private void onBatchCompleted() {
+        if (!pending.isEmpty() || isShutdown.get()) {
+            scheduleDrain();
+        }
+    }
+
+    private void armLinger() {
+        if (linger != null) {
+            return;
+        }
+        synchronized (lingerLock) {
+            if (linger == null) {
+                long generation = ++lingerGeneration;
+                linger = runtime.schedule(options.timeout(), () -> onLingerExpired(generation));
+            }
+        }
+    }
+
+    /**
+     * Cancel the linger deadline for jobs that have been taken for a
+     * batch. If it has already expired, the flush it requested is stale
+     * and is dropped, so it doesn't cut short the next partial batch.
      */
-    private MBPendingJob<TInput, TOutput> getPendingJob() throws InterruptedException {
-        return pending.poll(options.timeout().toMillis(), TimeUnit.MILLISECONDS);
+    private void disarmLinger() {
+        synchronized (lingerLock) {
+            if (linger != null) {
+                linger.cancel();
+                linger = null;
+            }
+            flushRequested.compareAndSet(MBFlushTrigger.TIMEOUT, null);
+        }
+    }
+
+    /**
+     * Runs on the runtime's timer thread. Deadlines that have been
+     * disarmed and re-armed since they were scheduled are ignored.
+     */
+    private void onLingerExpired(long generation) {
+        synchronized (lingerLock) {
+            if (linger == null || generation != lingerGeneration) {
+                return;
+            }
+            linger = null;
+            flushRequested.compareAndSet(null, MBFlushTrigger.TIMEOUT);
+        }
+        scheduleDrain();
     }
 
     /**
@@ -145,24 +872,144 @@ public class MBBatcher<TInput, TOutput> implements MicroBatcher<TInput, TOutput>
      *
      * Sets the shutdown flag to reject incoming job submissions,
      * and tells the background thread to exit after processing all
-     * pending jobs.
+     * pending jobs. Partial batches are dispatched straight away
+     * rather than waiting for the timeout.
      */
     @Override
     public void shutdown() {
-        // Idempotence - check if batcher is already shutdown.
-        if (isShutdown.get()) {
-            return;
-        }
-        isShutdown.set(true);
+        beginShutdown();
         try {
             // Wait for the background submitter to finish processing
             // all outstanding jobs.
             backgroundSubmitter.get();
+        } catch (InterruptedException e) {
+            // Released once the background submitter finishes.
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        releaseResources();
+    }
+
+    /**
+     * Shutdown the micro-batcher, waiting up to the given time for
+     * pending jobs to be processed.
+     *
+     * If the deadline passes, pending jobs carry on being processed in
+     * the background, and the batcher's threads and files are released
+     * once they have been. Call {@link #shutdownNow()} to take back the
+     * jobs that haven't been processed yet.
+     *
+     * @return true if all jobs were processed before the deadline.
+     */
+    @Override
+    public boolean shutdown(Duration timeout) {
+        beginShutdown();
+        try {
+            backgroundSubmitter.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return false;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            return false;
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
         }
-        executorService.shutdown();
+        releaseResources();
+        return true;
+    }
+
+    /**
+     * Shutdown the micro-batcher without processing pending jobs.
+     *
+     * Jobs that haven't been taken for a batch yet are removed from the
+     * queue and returned, so they can be handed to another batcher. Their
+     * futures are completed with a failed {@link JobResult} holding a
+     * {@link CancellationException}. A batch already being processed is
+     * allowed to finish, and this method waits for it.
+     *
+     * Jobs returned are not marked done in the write-ahead log, so they
+     * are returned here and also replayed when the log is next opened.
+     * With a log, either resubmit them or leave them to be replayed -
+     * doing both processes them twice.
+     *
+     * @return the jobs that were not processed, in the order they would
+     *         have been batched. That is submission order, unless fair
+     *         queueing is enabled, in which case tenants' jobs are
+     *         interleaved in weighted round-robin order.
+     */
+    @Override
+    public List<Job<TInput>> shutdownNow() {
+        isStopped.set(true);
+        beginShutdown();
+
+        List<MBPendingJob<TInput, TOutput>> unprocessed = new ArrayList<>();
+        pending.drainTo(unprocessed);
+        unprocessed.removeIf(pendingJob -> pendingJob == wakeUp);
+        if (runtime != null) {
+            scheduleDrain();
+        } else {
+            // The background thread may have been waiting on the marker just removed.
+            wakeUpQueued.set(false);
+            queueWakeUp();
+        }
+
+        List<Job<TInput>> jobs = new ArrayList<>(unprocessed.size());
+        for (var pendingJob : unprocessed) {
+            MBJobResult<TOutput> jobResult = new MBJobResult<>();
+            jobResult.setException(new CancellationException("Batcher shut down before the job was processed"));
+            pendingJob.getJobResult().complete(jobResult);
+            jobs.add(pendingJob.getJob());
+        }
+
+        shutdown();
+        return jobs;
+    }
+
+    /**
+     * Reject further submissions and wake the background thread so that
+     * it stops waiting for new jobs. Resources are released once it has
+     * finished, even if the caller stops waiting for it first.
+     */
+    private void beginShutdown() {
+        // Waits for submitters that have passed the shutdown check.
+        shutdownLock.writeLock().lock();
+        try {
+            if (!isShutdown.compareAndSet(false, true)) {
+                return;
+            }
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        backgroundSubmitter.whenComplete((ignored, e) -> releaseResources());
+        if (runtime != null) {
+            scheduleDrain();
+        } else {
+            queueWakeUp();
+        }
+    }
+
+    /**
+     * Stop the background and completion threads, and close the spill
+     * queue and log, once all jobs have been processed. Only the first
+     * call does anything, and later calls wait for it to finish.
+     */
+    private synchronized void releaseResources() {
+        if (resourcesReleased) {
+            return;
+        }
+        resourcesReleased = true;
+        if (executorService != null) {
+            executorService.shutdown();
+            batchExecutor.shutdown();
+        }
+        if (pending instanceof MBSpillQueue<?, ?> spillQueue) {
+            spillQueue.close();
+        }
+        if (log != null) {
+            log.close();
+        }
+        completer.shutdown();
     }
 }
@@ -1,8 +1,14 @@
 package org.batch.mb;
 
+import org.batch.BatcherRuntime;
+import org.batch.CompletionMode;
 import org.batch.MicroBatcherOptions;
+import org.batch.WaitStrategy;
 
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.ToIntFunction;
 
 /**
  * Specify {@link MBBatcher} options with a fluent builder.
@@ -10,13 +16,31 @@ import java.time.Duration;
 public class MBBatcherOptions implements MicroBatcherOptions {
     private static final int DEFAULT_BATCH_SIZE = 5;
     private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    private static final CompletionMode DEFAULT_COMPLETION_MODE = CompletionMode.INLINE;
+    private static final WaitStrategy DEFAULT_WAIT_STRATEGY = MBWaitStrategies.blocking();
+    private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 1;
+    private static final int DEFAULT_MAX_PENDING_JOBS = Integer.MAX_VALUE;
 
     private final int batchSize;
     private final Duration timeout;
+    private final BatcherRuntime runtime;
+    private final CompletionMode completionMode;
+    private final Executor completionExecutor;
+    private final WaitStrategy waitStrategy;
+    private final int maxConcurrentBatches;
+    private final int maxPendingJobs;
+    private final ToIntFunction<String> tenantWeights;
 
     public MBBatcherOptions(Builder builder) {
         this.batchSize = builder.getBatchSize();
         this.timeout = builder.getTimeout();
+        this.runtime = builder.getRuntime();
+        this.completionMode = builder.getCompletionMode();
+        this.completionExecutor = builder.getCompletionExecutor();
+        this.waitStrategy = builder.getWaitStrategy();
+        this.maxConcurrentBatches = builder.getMaxConcurrentBatches();
+        this.maxPendingJobs = builder.getMaxPendingJobs();
+        this.tenantWeights = builder.getTenantWeights();
     }
 
     @Override
@@ -29,13 +53,75 @@ public class MBBatcherOptions implements MicroBatcherOptions {
         return timeout;
     }
 
+    @Override
+    public Optional<BatcherRuntime> runtime() {
+        return Optional.ofNullable(runtime);
+    }
+
+    @Override
+    public CompletionMode completionMode() {
+        return completionMode;
+    }
+
+    @Override
+    public Optional<Executor> completionExecutor() {
+        return Optional.ofNullable(completionExecutor);
+    }
+
+    @Override
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public int maxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    @Override
+    public int maxPendingJobs() {
+        return maxPendingJobs;
+    }
+
+    @Override
+    public Optional<ToIntFunction<String>> tenantWeights() {
+        return Optional.ofNullable(tenantWeights);
+    }
+
     public static class Builder {
         private int batchSize;
         private Duration timeout;
+        private BatcherRuntime runtime;
+        private CompletionMode completionMode;
+        private Executor completionExecutor;
+        private WaitStrategy waitStrategy;
+        private int maxConcurrentBatches;
+        private int maxPendingJobs;
+        private ToIntFunction<String> tenantWeights;
 
         public Builder() {
             batchSize = DEFAULT_BATCH_SIZE;
             timeout = DEFAULT_TIMEOUT;
+            completionMode = DEFAULT_COMPLETION_MODE;
+            waitStrategy = DEFAULT_WAIT_STRATEGY;
+            maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+            maxPendingJobs = DEFAULT_MAX_PENDING_JOBS;
+        }
+
+        /**
+         * Start from a copy of existing options, e.g. to change some of
+         * them on a running batcher with {@link MBBatcher#reconfigure}.
+         */
+        public Builder(MicroBatcherOptions options) {
+            batchSize = options.batchSize();
+            timeout = options.timeout();
+            runtime = options.runtime().orElse(null);
+            completionMode = options.completionMode();
+            completionExecutor = options.completionExecutor().orElse(null);
+            waitStrategy = options.waitStrategy();
+            maxConcurrentBatches = options.maxConcurrentBatches();
+            maxPendingJobs = options.maxPendingJobs();
+            tenantWeights = options.tenantWeights().orElse(null);
         }
 
         public int getBatchSize() {
@@ -46,6 +132,34 @@ public class MBBatcherOptions implements MicroBatcherOptions {
             return timeout;
         }
 
+        public BatcherRuntime getRuntime() {
+            return runtime;
+        }
+
+        public CompletionMode getCompletionMode() {
+            return completionMode;
+        }
+
+        public Executor getCompletionExecutor() {
+            return completionExecutor;
+        }
+
+        public WaitStrategy getWaitStrategy() {
+            return waitStrategy;
+        }
+
+        public int getMaxConcurrentBatches() {
+            return maxConcurrentBatches;
+        }
+
+        public int getMaxPendingJobs() {
+            return maxPendingJobs;
+        }
+
+        public ToIntFunction<String> getTenantWeights() {
+            return tenantWeights;
+        }
+
         public Builder withBatchSize(int batchSize) {
             this.batchSize = batchSize;
             return this;
@@ -56,6 +170,62 @@ public class MBBatcherOptions implements MicroBatcherOptions {
             return this;
         }
 
+        public Builder withRuntime(BatcherRuntime runtime) {
+            this.runtime = runtime;
+            return this;
+        }
+
+        public Builder withCompletionMode(CompletionMode completionMode) {
+            this.completionMode = completionMode;
+            return this;
+        }
+
+        /**
+         * Executor to complete job futures on. The caller remains
+         * responsible for shutting it down.
+         */
+        public Builder withCompletionExecutor(Executor completionExecutor) {
+            this.completionExecutor = completionExecutor;
+            return this;
+        }
+
+        /**
+         * How the background thread waits for jobs - see {@link MBWaitStrategies}.
+         */
+        public Builder withWaitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * Number of batches that can be processed at once. Defaults to one,
+         * which keeps batches in submission order.
+         */
+        public Builder withMaxConcurrentBatches(int maxConcurrentBatches) {
+            this.maxConcurrentBatches = maxConcurrentBatches;
+            return this;
+        }
+
+        /**
+         * Number of queued jobs beyond which {@link MBBatcher#submit}
+         * rejects new jobs. Unbounded by default.
+         */
+        public Builder withMaxPendingJobs(int maxPendingJobs) {
+            this.maxPendingJobs = maxPendingJobs;
+            return this;
+        }
+
+        /**
+         * Share batches fairly between tenants, using the given weight for
+         * each tenant - see {@link MBFairQueue}. Use {@code tenant -> 1} to
+         * weight all tenants equally. Jobs submitted without a tenant share
+         * the {@link MBBatcher#DEFAULT_TENANT}.
+         */
+        public Builder withFairQueueing(ToIntFunction<String> tenantWeights) {
+            this.tenantWeights = tenantWeights;
+            return this;
+        }
+
         public MBBatcherOptions build() {
             return new MBBatcherOptions(this);
         }
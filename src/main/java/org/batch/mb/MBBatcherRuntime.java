@@ -0,0 +1,145 @@
+package org.batch.mb;
+
+import org.batch.BatcherRuntime;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BatcherRuntime} built from a {@link MBTimerWheel} and a fixed-size
+ * worker pool.
+ *
+ * Any number of {@link MBBatcher}s can share one runtime by passing it in
+ * their options. Each batcher has at most one dispatch task queued or running
+ * on the pool at a time, so memory use and thread count stay flat as the
+ * number of batchers grows.
+ *
+ * <pre>{@code
+ * MBBatcherRuntime runtime = new MBBatcherRuntime.Builder()
+ *         .withWorkerThreads(4)
+ *         .build();
+ * MBBatcherOptions options = new MBBatcherOptions.Builder()
+ *         .withRuntime(runtime)
+ *         .build();
+ * }</pre>
+ */
+public class MBBatcherRuntime implements BatcherRuntime {
+    private static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final Duration DEFAULT_TICK_DURATION = Duration.ofMillis(1);
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final AtomicInteger RUNTIME_COUNT = new AtomicInteger();
+
+    private final MBTimerWheel timerWheel;
+    private final ExecutorService workers;
+
+    public MBBatcherRuntime(Builder builder) {
+        int runtimeNumber = RUNTIME_COUNT.incrementAndGet();
+        this.timerWheel = new MBTimerWheel(
+                builder.getTickDuration(),
+                builder.getWheelSize(),
+                namedThreads(String.format("mb-runtime-%d-timer", runtimeNumber)));
+        // Each batcher queues at most one dispatch task at a time, so the
+        // work queue is bounded by the number of registered batchers.
+        this.workers = new ThreadPoolExecutor(
+                builder.getWorkerThreads(),
+                builder.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                namedThreads(String.format("mb-runtime-%d-worker", runtimeNumber)));
+    }
+
+    @Override
+    public Timeout schedule(Duration delay, Runnable task) {
+        return timerWheel.schedule(delay, task);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Stop the timer, then wait for tasks already handed to the
+     * worker pool to finish.
+     */
+    @Override
+    public void shutdown() {
+        timerWheel.stop();
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting for in-flight batches.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        var threadCount = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable);
+            thread.setName(String.format("%s-%d", prefix, threadCount.getAndIncrement()));
+            return thread;
+        };
+    }
+
+    public static class Builder {
+        private int workerThreads;
+        private Duration tickDuration;
+        private int wheelSize;
+
+        public Builder() {
+            workerThreads = DEFAULT_WORKER_THREADS;
+            tickDuration = DEFAULT_TICK_DURATION;
+            wheelSize = DEFAULT_WHEEL_SIZE;
+        }
+
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        public Duration getTickDuration() {
+            return tickDuration;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        /**
+         * Number of threads available for invoking batch processors.
+         */
+        public Builder withWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * Resolution of the linger timer - timeouts fire up to one tick late.
+         */
+        public Builder withTickDuration(Duration tickDuration) {
+            this.tickDuration = tickDuration;
+            return this;
+        }
+
+        /**
+         * Number of buckets in the timer wheel. Timeouts further out than
+         * wheelSize * tickDuration take extra rotations of the wheel.
+         */
+        public Builder withWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+            return this;
+        }
+
+        public MBBatcherRuntime build() {
+            return new MBBatcherRuntime(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.batch.mb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size pool of direct {@link ByteBuffer} segments.
+ *
+ * Segments are allocated lazily, up to the configured maximum, and reused
+ * once released. When every segment is in use, {@link #acquire()} blocks
+ * until one is released, which bounds the off-heap memory held by the
+ * batchers sharing the pool and pushes back on their submitters.
+ *
+ * Direct buffers are expensive to allocate and are only freed by the
+ * garbage collector, so pooling them avoids both costs on every batch.
+ */
+public class MBBufferPool {
+    private final int segmentSize;
+    private final int maxSegments;
+    private final BlockingQueue<ByteBuffer> free;
+    private final AtomicInteger allocated;
+
+    /**
+     * @param segmentSize Size of each segment in bytes, which also limits
+     *                    the size of a single encoded input.
+     * @param maxSegments Maximum number of segments allocated at once.
+     */
+    public MBBufferPool(int segmentSize, int maxSegments) {
+        if (segmentSize < Integer.BYTES || maxSegments < 1) {
+            throw new IllegalArgumentException("Buffer pool needs at least one segment of at least "
+                    + Integer.BYTES + " bytes");
+        }
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.free = new ArrayBlockingQueue<>(maxSegments);
+        this.allocated = new AtomicInteger();
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * @return the number of segments allocated so far, whether in use or free.
+     */
+    public int getAllocatedSegments() {
+        return allocated.get();
+    }
+
+    /**
+     * Take a cleared segment from the pool, allocating one if the pool
+     * is not yet full, or waiting for one to be released otherwise.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        ByteBuffer segment = free.poll();
+        if (segment != null) {
+            return segment;
+        }
+        if (allocated.getAndUpdate(count -> count < maxSegments ? count + 1 : count) < maxSegments) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        return free.take();
+    }
+
+    /**
+     * Return a segment acquired from this pool.
+     */
+    public void release(ByteBuffer segment) {
+        segment.clear();
+        free.add(segment);
+    }
+}
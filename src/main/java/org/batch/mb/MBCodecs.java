@@ -0,0 +1,147 @@
+package org.batch.mb;
+
+import org.batch.Codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link Codec} implementations for common job input and output types.
+ */
+public final class MBCodecs {
+    private MBCodecs() {
+    }
+
+    /**
+     * UTF-8 encoded strings, encoded straight into the buffer without an
+     * intermediate byte array. As with {@link String#getBytes}, an unpaired
+     * surrogate is encoded as '?'.
+     */
+    public static Codec<String> strings() {
+        return new Codec<>() {
+            @Override
+            public int encodedSize(String value) {
+                int size = 0;
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c < 0x80) {
+                        size += 1;
+                    } else if (c < 0x800) {
+                        size += 2;
+                    } else if (isSurrogatePair(value, i)) {
+                        size += 4;
+                        i++;
+                    } else if (Character.isSurrogate(c)) {
+                        size += 1;
+                    } else {
+                        size += 3;
+                    }
+                }
+                return size;
+            }
+
+            @Override
+            public void encode(String value, ByteBuffer buffer) {
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c < 0x80) {
+                        buffer.put((byte) c);
+                    } else if (c < 0x800) {
+                        buffer.put((byte) (0xC0 | c >> 6));
+                        buffer.put((byte) (0x80 | c & 0x3F));
+                    } else if (isSurrogatePair(value, i)) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        buffer.put((byte) (0xF0 | codePoint >> 18));
+                        buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                        buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                        buffer.put((byte) (0x80 | codePoint & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        buffer.put((byte) '?');
+                    } else {
+                        buffer.put((byte) (0xE0 | c >> 12));
+                        buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                        buffer.put((byte) (0x80 | c & 0x3F));
+                    }
+                }
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                return StandardCharsets.UTF_8.decode(buffer).toString();
+            }
+        };
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /**
+     * Four-byte big-endian integers.
+     */
+    public static Codec<Integer> integers() {
+        return new Codec<>() {
+            @Override
+            public int encodedSize(Integer value) {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void encode(Integer value, ByteBuffer buffer) {
+                buffer.putInt(value);
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer) {
+                return buffer.getInt();
+            }
+        };
+    }
+
+    /**
+     * Eight-byte big-endian longs.
+     */
+    public static Codec<Long> longs() {
+        return new Codec<>() {
+            @Override
+            public int encodedSize(Long value) {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void encode(Long value, ByteBuffer buffer) {
+                buffer.putLong(value);
+            }
+
+            @Override
+            public Long decode(ByteBuffer buffer) {
+                return buffer.getLong();
+            }
+        };
+    }
+
+    /**
+     * Raw byte arrays, copied as-is.
+     */
+    public static Codec<byte[]> byteArrays() {
+        return new Codec<>() {
+            @Override
+            public int encodedSize(byte[] value) {
+                return value.length;
+            }
+
+            @Override
+            public void encode(byte[] value, ByteBuffer buffer) {
+                buffer.put(value);
+            }
+
+            @Override
+            public byte[] decode(ByteBuffer buffer) {
+                byte[] value = new byte[buffer.remaining()];
+                buffer.get(value);
+                return value;
+            }
+        };
+    }
+}
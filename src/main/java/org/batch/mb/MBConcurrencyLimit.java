@@ -0,0 +1,65 @@
+package org.batch.mb;
+
+/**
+ * Counting permit for batches being processed, with a limit that can be
+ * changed while permits are held.
+ *
+ * Unlike {@link java.util.concurrent.Semaphore}, lowering the limit takes
+ * effect without having to acquire the surplus permits - batches already
+ * being processed finish, and no new ones start until the number in
+ * flight is back under the new limit.
+ */
+final class MBConcurrencyLimit {
+    private int limit;
+    private int inFlight;
+
+    MBConcurrencyLimit(int limit) {
+        this.limit = limit;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized void setLimit(int limit) {
+        this.limit = limit;
+        notifyAll();
+    }
+
+    synchronized boolean hasCapacity() {
+        return inFlight < limit;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    synchronized boolean isIdle() {
+        return inFlight == 0;
+    }
+
+    /**
+     * Wait until every acquired permit has been released.
+     */
+    synchronized void awaitIdle() throws InterruptedException {
+        while (inFlight > 0) {
+            wait();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.batch.mb;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Unbounded {@link BlockingQueue} that shares its output fairly between
+ * tenants, using deficit round-robin.
+ *
+ * Each tenant has its own FIFO lane. Tenants with queued elements take
+ * turns in a round; on each turn a tenant may take as many elements as
+ * its weight before the next tenant's turn. A tenant that floods the
+ * queue therefore only delays the others by its weight per round, rather
+ * than by everything it has queued. Lanes are dropped once empty, so
+ * tenants that come and go don't accumulate.
+ *
+ * Elements without a tenant go into a background lane that is served
+ * only once every tenant lane is empty.
+ *
+ * A single lock guards the lanes, as in {@link java.util.concurrent.ArrayBlockingQueue}.
+ * The iterator is a snapshot, and does not support removal.
+ *
+ * @param <E> Type parameter for queued elements.
+ */
+public class MBFairQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Function<? super E, String> tenantOf;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Map<String, Lane<E>> lanes;
+    private final ArrayDeque<Lane<E>> round;
+    private final ArrayDeque<E> background;
+    private volatile ToIntFunction<String> weights;
+    private int count;
+
+    /**
+     * @param tenantOf Returns the tenant of an element, or null for the background lane.
+     * @param weights Returns the weight of a tenant. Weights below one are treated as one.
+     */
+    public MBFairQueue(Function<? super E, String> tenantOf, ToIntFunction<String> weights) {
+        this.tenantOf = tenantOf;
+        this.weights = weights;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.lanes = new HashMap<>();
+        this.round = new ArrayDeque<>();
+        this.background = new ArrayDeque<>();
+    }
+
+    /**
+     * Change the tenant weights. Takes effect from each tenant's next turn.
+     */
+    public void setWeights(ToIntFunction<String> weights) {
+        this.weights = weights;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        String tenant = tenantOf.apply(element);
+        lock.lock();
+        try {
+            if (tenant == null) {
+                background.add(element);
+            } else {
+                Lane<E> lane = lanes.computeIfAbsent(tenant, Lane::new);
+                if (lane.elements.isEmpty()) {
+                    round.addLast(lane);
+                }
+                lane.elements.add(element);
+            }
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E element) {
+        offer(element);
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) {
+        return offer(element);
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            Lane<E> lane = round.peekFirst();
+            return lane != null ? lane.elements.peekFirst() : background.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself");
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                collection.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return an iterator over a snapshot of the queue, in the order the
+     *         elements would be taken if no more were added.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        lock.lock();
+        try {
+            List<E> snapshot = new ArrayList<>(count);
+            round.forEach(lane -> snapshot.addAll(lane.elements));
+            snapshot.addAll(background);
+            return Collections.unmodifiableList(snapshot).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the next element. Must hold the lock, with count above zero.
+     *
+     * The lane at the head of the round is granted its weight when its
+     * turn starts, and is charged one for each element taken. When its
+     * allowance is spent it goes to the back of the round; when it is
+     * empty it leaves the round and forfeits any unused allowance.
+     */
+    private E dequeue() {
+        count--;
+        Lane<E> lane = round.peekFirst();
+        if (lane == null) {
+            return background.pollFirst();
+        }
+        if (lane.deficit <= 0) {
+            lane.deficit = Math.max(weights.applyAsInt(lane.tenant), 1);
+        }
+        E element = lane.elements.pollFirst();
+        lane.deficit--;
+        if (lane.elements.isEmpty()) {
+            lane.deficit = 0;
+            round.pollFirst();
+            lanes.remove(lane.tenant);
+        } else if (lane.deficit <= 0) {
+            round.pollFirst();
+            round.addLast(lane);
+        }
+        return element;
+    }
+
+    private static class Lane<E> {
+        private final String tenant;
+        private final ArrayDeque<E> elements;
+        private int deficit;
+
+        Lane(String tenant) {
+            this.tenant = tenant;
+            this.elements = new ArrayDeque<>();
+        }
+    }
+}
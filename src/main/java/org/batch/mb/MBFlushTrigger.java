@@ -0,0 +1,15 @@
+package org.batch.mb;
+
+/**
+ * Why a batch was dispatched, as reported in the batcher's JFR events.
+ */
+enum MBFlushTrigger {
+    /** The batch reached the configured batch size. */
+    FULL,
+    /** The timeout elapsed before the batch was full. */
+    TIMEOUT,
+    /** {@link org.batch.MicroBatcher#flush()} was called. */
+    FLUSH,
+    /** The batcher is shutting down and dispatching what is left. */
+    SHUTDOWN
+}
@@ -0,0 +1,154 @@
+package org.batch.mb;
+
+import org.batch.CompletionMode;
+import org.batch.JobResult;
+import org.batch.MicroBatcherOptions;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completes job futures according to the configured {@link CompletionMode}.
+ *
+ * Completing a {@link CompletableFuture} runs the caller's dependent
+ * actions on the completing thread, so in {@link CompletionMode#INLINE}
+ * mode slow callbacks hold up the batching thread. The other modes hand
+ * completion off to an executor - either the one supplied in the options,
+ * or a dedicated thread owned by this completer.
+ *
+ * If the executor rejects a completion task, the futures are completed
+ * inline instead so that callers are never left waiting.
+ *
+ * Each batch's completion is recorded as a JFR {@link MBBatchCompletionEvent},
+ * committed once the last of its futures has been completed.
+ *
+ * @param <TOutput> Type parameter for job outputs.
+ */
+public class MBJobCompleter<TOutput> {
+    private final CompletionMode mode;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    public MBJobCompleter(MicroBatcherOptions options) {
+        this.mode = options.completionMode();
+        if (mode == CompletionMode.INLINE) {
+            this.ownedExecutor = null;
+            this.executor = null;
+        } else if (options.completionExecutor().isPresent()) {
+            this.ownedExecutor = null;
+            this.executor = options.completionExecutor().get();
+        } else {
+            this.ownedExecutor = Executors.newSingleThreadExecutor();
+            this.executor = ownedExecutor;
+        }
+    }
+
+    /**
+     * Complete each future with the corresponding result.
+     *
+     * @param futures Futures to complete.
+     * @param results Results, matching the futures in size and order.
+     */
+    public void complete(List<CompletableFuture<JobResult<TOutput>>> futures,
+                         List<? extends JobResult<TOutput>> results) {
+        complete(futures, results, new MBBatchCompletionEvent());
+    }
+
+    /**
+     * Complete each future with the corresponding result, recording the
+     * completion in the given event. The batch size and completion mode
+     * are filled in here, other fields are left to the caller.
+     */
+    void complete(List<CompletableFuture<JobResult<TOutput>>> futures,
+                  List<? extends JobResult<TOutput>> results,
+                  MBBatchCompletionEvent event) {
+        event.begin();
+        switch (mode) {
+            case INLINE -> {
+                completeAll(futures, results);
+                commit(event, futures.size());
+            }
+            case EXECUTOR -> {
+                var remaining = new AtomicInteger(futures.size());
+                for (int i = 0; i < futures.size(); i++) {
+                    var future = futures.get(i);
+                    JobResult<TOutput> result = results.get(i);
+                    execute(() -> {
+                        future.complete(result);
+                        if (remaining.decrementAndGet() == 0) {
+                            commit(event, futures.size());
+                        }
+                    });
+                }
+            }
+            case BATCHED -> execute(() -> {
+                completeAll(futures, results);
+                commit(event, futures.size());
+            });
+        }
+    }
+
+    /**
+     * Results are matched to jobs by position, so a processor returning
+     * the wrong number of them fails the whole batch.
+     *
+     * @throws IllegalStateException if there isn't one result per job.
+     */
+    static <T> List<T> checkResults(int jobCount, List<T> results) {
+        if (results == null || results.size() != jobCount) {
+            throw new IllegalStateException(String.format("Batch processor returned %s results for %d jobs",
+                    results == null ? "no" : results.size(), jobCount));
+        }
+        return results;
+    }
+
+    private void commit(MBBatchCompletionEvent event, int batchSize) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.batchSize = batchSize;
+            event.completionMode = mode.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Wait for outstanding completions on the completer's own thread.
+     *
+     * Completions handed to an executor supplied in the options may
+     * still be pending when this returns.
+     */
+    public void shutdown() {
+        if (ownedExecutor == null) {
+            return;
+        }
+        ownedExecutor.shutdown();
+        try {
+            while (!ownedExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting for callbacks to finish.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Runnable completion) {
+        try {
+            executor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private void completeAll(List<CompletableFuture<JobResult<TOutput>>> futures,
+                             List<? extends JobResult<TOutput>> results) {
+        for (int i = 0; i < results.size(); i++) {
+            futures.get(i).complete(results.get(i));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.batch.mb;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event committed for each job once its batch has been processed.
+ *
+ * Disabled by default, as it is committed once per job rather than once
+ * per batch - enable it in the recording settings to see the wait time of
+ * individual jobs.
+ */
+@Name("org.batch.Job")
+@Label("Job")
+@Category("MicroBatching")
+@Description("A job was processed as part of a batch")
+@Enabled(false)
+@StackTrace(false)
+final class MBJobEvent extends Event {
+    @Label("Batcher")
+    int batcherId;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Flush Trigger")
+    String trigger;
+
+    @Label("Queue Time")
+    @Description("Time from the job being submitted to its batch being passed to the batch processor")
+    @Timespan
+    long queueTime;
+
+    @Label("Process Time")
+    @Description("Time the batch processor took to process the job's batch")
+    @Timespan
+    long processTime;
+}
@@ -14,16 +14,51 @@ import java.util.concurrent.CompletableFuture;
  * complete the future with the JobResult after the Job has
  * been submitted to the {@link org.batch.BatchProcessor}.
  *
+ * The submission time is recorded for the batcher's JFR events, and
+ * the tenant is used when jobs are scheduled fairly between tenants.
+ * Jobs recorded in a {@link MBWriteAheadLog} carry their log ID.
+ *
  * @param <TInput> Type parameter for job input.
  * @param <TOutput> Type parameter for job output.
  */
 public class MBPendingJob<TInput, TOutput> {
+    /**
+     * Log ID of jobs that are not in a {@link MBWriteAheadLog}.
+     */
+    public static final long NOT_LOGGED = -1;
+
     private final Job<TInput> job;
     private final CompletableFuture<JobResult<TOutput>> jobResult;
+    private final long submitNanos;
+    private final String tenantId;
+    private final long logId;
 
     public MBPendingJob(Job<TInput> job) {
+        this(job, null);
+    }
+
+    public MBPendingJob(Job<TInput> job, String tenantId) {
+        this(job, tenantId, System.nanoTime());
+    }
+
+    /**
+     * @param submitNanos Submission time, from the batcher's clock.
+     */
+    public MBPendingJob(Job<TInput> job, String tenantId, long submitNanos) {
+        this(job, tenantId, submitNanos, new CompletableFuture<>(), NOT_LOGGED);
+    }
+
+    /**
+     * Build a pending job for a given future, e.g. when a spilled job is
+     * read back from disk for a future already handed to the client.
+     */
+    MBPendingJob(Job<TInput> job, String tenantId, long submitNanos,
+                 CompletableFuture<JobResult<TOutput>> jobResult, long logId) {
         this.job = job;
-        this.jobResult = new CompletableFuture<>();
+        this.tenantId = tenantId;
+        this.jobResult = jobResult;
+        this.submitNanos = submitNanos;
+        this.logId = logId;
     }
 
     public Job<TInput> getJob() {
@@ -33,4 +68,23 @@ public class MBPendingJob<TInput, TOutput> {
     public CompletableFuture<JobResult<TOutput>> getJobResult() {
         return jobResult;
     }
+
+    /**
+     * @return the time at which the job was submitted, by default from
+     *         {@link System#nanoTime()}.
+     */
+    public long getSubmitNanos() {
+        return submitNanos;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return the job's ID in the batcher's write-ahead log, or {@link #NOT_LOGGED}.
+     */
+    public long getLogId() {
+        return logId;
+    }
 }
@@ -0,0 +1,393 @@
+package org.batch.mb;
+
+import org.batch.*;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MicroBatcher implementation that encodes job inputs into off-heap
+ * buffers as they are submitted.
+ *
+ * Each submitted input is encoded with the supplied {@link Codec} straight
+ * into the current segment, a direct {@link ByteBuffer} taken from a
+ * {@link MBBufferPool}. Only the job's future is kept on the heap. The
+ * segment is sealed and handed to the background thread once it holds a
+ * full batch, once the next input would not fit, on {@link #flush()}, or
+ * when no batch has been dispatched for the timeout. The
+ * {@link SerializedBatchProcessor} then receives the encoded batch, ready
+ * to be written to a channel without another copy, and the segment goes
+ * back to the pool once the processor returns.
+ *
+ * When the pool has no free segments, submitters block until the
+ * background thread releases one, so the pool size bounds both the
+ * memory used and the number of batches waiting to be processed.
+ *
+ * Submitters encode under a lock, in submission order. Shared
+ * {@link BatcherRuntime}s are not supported - this batcher always runs
+ * its own background thread. Nor are concurrent batches, a pending job
+ * limit (the pool bounds the backlog instead) or fair queueing, and its
+ * options can't be changed once it is running.
+ *
+ * @param <TInput> Type parameter for job inputs.
+ * @param <TOutput> Type parameter for job outputs.
+ */
+public class MBSerializedBatcher<TInput, TOutput> implements MicroBatcher<TInput, TOutput> {
+
+    private final MicroBatcherOptions options;
+    private final Codec<TInput> codec;
+    private final SerializedBatchProcessor<TOutput> processor;
+    private final MBBufferPool pool;
+    private final MBJobCompleter<TOutput> completer;
+    private final BlockingQueue<Segment> sealed;
+    private final Segment wakeUp;
+    private final ReentrantLock appendLock;
+    private final ExecutorService executorService;
+    private final Future<?> backgroundSubmitter;
+    private final AtomicBoolean isShutdown;
+    private final AtomicBoolean isStopped;
+    private Segment current;
+
+    /**
+     * @param options Batch size, timeout, completion and wait strategy options.
+     * @param codec Encodes job inputs into the batch buffers.
+     * @param processor Processes the encoded batches.
+     * @param pool Pool of segments, which may be shared between batchers.
+     * @throws IllegalArgumentException if the options specify a runtime,
+     *         more than one concurrent batch, a pending job limit or
+     *         fair queueing.
+     */
+    public MBSerializedBatcher(MicroBatcherOptions options, Codec<TInput> codec,
+                               SerializedBatchProcessor<TOutput> processor, MBBufferPool pool) {
+        if (options.runtime().isPresent()) {
+            throw new IllegalArgumentException("MBSerializedBatcher does not support a shared BatcherRuntime");
+        }
+        if (options.maxConcurrentBatches() != 1 || options.maxPendingJobs() != Integer.MAX_VALUE
+                || options.tenantWeights().isPresent()) {
+            throw new IllegalArgumentException(
+                    "MBSerializedBatcher does not support concurrent batches, a pending job limit or fair queueing");
+        }
+        this.options = options;
+        this.codec = codec;
+        this.processor = processor;
+        this.pool = pool;
+        this.completer = new MBJobCompleter<>(options);
+        this.sealed = new LinkedBlockingQueue<>();
+        this.wakeUp = new Segment(null, 0);
+        this.appendLock = new ReentrantLock();
+        this.isShutdown = new AtomicBoolean(false);
+        this.isStopped = new AtomicBoolean(false);
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.backgroundSubmitter = executorService.submit(this::processSegments);
+    }
+
+    /**
+     * Encode the job's input into the current segment.
+     *
+     * Cannot be called after {@link #shutdown()} has been invoked. Blocks
+     * while every segment in the pool is in use. If interrupted while
+     * waiting, the returned future holds a failed {@link JobResult}.
+     *
+     * @throws IllegalArgumentException if the encoded input is larger
+     *         than a pool segment.
+     * @throws IllegalCallerException if shutdown has begun.
+     */
+    @Override
+    public CompletableFuture<JobResult<TOutput>> submit(Job<TInput> job) {
+        if (isShutdown.get()) {
+            throw new IllegalCallerException("Cannot submit jobs after shutdown!");
+        }
+
+        TInput input = job.getInput();
+        int length = input == null ? -1 : codec.encodedSize(input);
+        int recordSize = Integer.BYTES + Math.max(length, 0);
+        if (recordSize > pool.getSegmentSize()) {
+            throw new IllegalArgumentException(String.format("Encoded input of %d bytes exceeds segment size of %d bytes",
+                    recordSize, pool.getSegmentSize()));
+        }
+
+        var jobResult = new CompletableFuture<JobResult<TOutput>>();
+        appendLock.lock();
+        try {
+            // Shutdown seals the last segment under this lock, so a
+            // submitter that got past the first check must not start another.
+            if (isShutdown.get()) {
+                throw new IllegalCallerException("Cannot submit jobs after shutdown!");
+            }
+            if (current != null && current.buffer.remaining() < recordSize) {
+                sealCurrent();
+            }
+            if (current == null) {
+                current = new Segment(pool.acquire(), options.batchSize());
+            }
+            current.append(input, length, jobResult);
+            if (current.size() >= options.batchSize()) {
+                sealCurrent();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            MBJobResult<TOutput> failed = new MBJobResult<>();
+            failed.setException(e);
+            jobResult.complete(failed);
+        } finally {
+            appendLock.unlock();
+        }
+        return jobResult;
+    }
+
+    /**
+     * Seal the current segment so that it is processed as a partial
+     * batch, without waiting for the timeout.
+     */
+    @Override
+    public void flush() {
+        appendLock.lock();
+        try {
+            sealCurrent();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Hand the current segment, if it holds any inputs, to the
+     * background thread. Must be called holding the append lock.
+     */
+    private void sealCurrent() {
+        if (current != null && current.size() > 0) {
+            sealed.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Invoked in the background thread to process sealed segments.
+     *
+     * If no segment is sealed within the timeout, the current segment
+     * is sealed as a partial batch. That is skipped while a submitter
+     * holds the append lock - it may be waiting for a segment that only
+     * this thread can release, and it seals full segments itself.
+     */
+    private void processSegments() {
+        while (!isStopped.get() && (!isShutdown.get() || !sealed.isEmpty())) {
+            Segment segment;
+            try {
+                segment = getSealedSegment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (segment == null) {
+                if (appendLock.tryLock()) {
+                    try {
+                        sealCurrent();
+                    } finally {
+                        appendLock.unlock();
+                    }
+                }
+            } else if (segment != wakeUp) {
+                processBatch(segment);
+            }
+        }
+    }
+
+    private Segment getSealedSegment() throws InterruptedException {
+        if (isShutdown.get()) {
+            return sealed.poll();
+        }
+        return options.waitStrategy().poll(sealed, options.timeout().toNanos());
+    }
+
+    /**
+     * Invoke the {@link SerializedBatchProcessor} with a sealed segment,
+     * return the segment to the pool and complete the futures.
+     *
+     * If the processor throws an exception, or doesn't return one result
+     * per job, the entire batch is marked as a failure with details of
+     * the exception thrown.
+     */
+    private void processBatch(Segment segment) {
+        List<JobResult<TOutput>> results;
+        try {
+            results = MBJobCompleter.checkResults(segment.size(), processor.process(segment));
+        } catch (Exception e) {
+            results = failedResults(segment.size(), e);
+        } finally {
+            pool.release(segment.buffer);
+        }
+        completer.complete(segment.futures, results);
+    }
+
+    private static <T> List<JobResult<T>> failedResults(int count, Exception exception) {
+        List<JobResult<T>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MBJobResult<T> jobResult = new MBJobResult<>();
+            jobResult.setException(exception);
+            results.add(jobResult);
+        }
+        return results;
+    }
+
+    /**
+     * Shutdown the micro-batcher, blocking until all submitted jobs
+     * have been processed. The current segment is processed straight
+     * away rather than waiting for the timeout.
+     */
+    @Override
+    public void shutdown() {
+        beginShutdown();
+        try {
+            backgroundSubmitter.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        releaseResources();
+    }
+
+    /**
+     * Shutdown the micro-batcher, waiting up to the given time for
+     * submitted jobs to be processed.
+     *
+     * @return true if all jobs were processed before the deadline.
+     */
+    @Override
+    public boolean shutdown(Duration timeout) {
+        beginShutdown();
+        try {
+            backgroundSubmitter.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        releaseResources();
+        return true;
+    }
+
+    /**
+     * Shutdown the micro-batcher without processing sealed segments.
+     *
+     * The inputs in segments that haven't been processed are decoded
+     * and returned as new jobs, and their futures are completed with a
+     * failed {@link JobResult} holding a {@link CancellationException}.
+     * A batch already being processed is allowed to finish.
+     *
+     * @return the jobs that were not processed, in submission order.
+     */
+    @Override
+    public List<Job<TInput>> shutdownNow() {
+        isStopped.set(true);
+        beginShutdown();
+
+        List<Segment> unprocessed = new ArrayList<>();
+        sealed.drainTo(unprocessed);
+        unprocessed.removeIf(segment -> segment == wakeUp);
+        // The background thread may have been waiting on the marker just removed.
+        sealed.add(wakeUp);
+
+        List<Job<TInput>> jobs = new ArrayList<>();
+        for (Segment segment : unprocessed) {
+            for (int i = 0; i < segment.size(); i++) {
+                var job = new MBJob<TInput>();
+                job.setInput(segment.decode(i, codec));
+                jobs.add(job);
+            }
+            pool.release(segment.buffer);
+            MBJobResult<TOutput> jobResult = new MBJobResult<>();
+            jobResult.setException(new CancellationException("Batcher shut down before the job was processed"));
+            segment.futures.forEach(future -> future.complete(jobResult));
+        }
+
+        shutdown();
+        return jobs;
+    }
+
+    /**
+     * Reject further submissions, seal the current segment and wake the
+     * background thread so that it stops waiting.
+     */
+    private void beginShutdown() {
+        if (!isShutdown.compareAndSet(false, true)) {
+            return;
+        }
+        flush();
+        sealed.add(wakeUp);
+    }
+
+    private void releaseResources() {
+        executorService.shutdown();
+        completer.shutdown();
+    }
+
+    /**
+     * A pool segment being filled with encoded inputs, along with the
+     * futures for their results.
+     */
+    private class Segment implements SerializedBatch {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final List<CompletableFuture<JobResult<TOutput>>> futures;
+
+        Segment(ByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+            this.futures = new ArrayList<>(capacity);
+        }
+
+        /**
+         * Write the length prefix and encoded input. The caller has
+         * checked that the record fits in the remaining space.
+         */
+        void append(TInput input, int length, CompletableFuture<JobResult<TOutput>> future) {
+            int start = buffer.position();
+            buffer.putInt(length);
+            if (input != null) {
+                try {
+                    codec.encode(input, buffer);
+                } catch (RuntimeException e) {
+                    buffer.position(start);
+                    throw e;
+                }
+                if (buffer.position() != start + Integer.BYTES + length) {
+                    buffer.position(start);
+                    throw new IllegalStateException("Codec wrote a different number of bytes than its encodedSize");
+                }
+            }
+            offsets[futures.size()] = start + Integer.BYTES;
+            lengths[futures.size()] = length;
+            futures.add(future);
+        }
+
+        @Override
+        public int size() {
+            return futures.size();
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return buffer.asReadOnlyBuffer().flip();
+        }
+
+        @Override
+        public int offset(int index) {
+            return offsets[index];
+        }
+
+        @Override
+        public int length(int index) {
+            return lengths[index];
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.batch.mb;
+
+import org.batch.BatcherRuntime;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * {@link BatcherRuntime} that runs on virtual time, for deterministic
+ * tests and offline simulation of batching policies.
+ *
+ * Nothing runs until {@link #run()} is called. The calling thread then
+ * works through the scheduled tasks in order of their virtual time, and
+ * the clock jumps from one task to the next, so a run covering minutes
+ * of linger deadlines finishes in milliseconds. Ties are broken in the
+ * order tasks were scheduled, which makes every run repeatable.
+ *
+ * Tasks passed to {@link #execute(Runnable)} are assigned to a fixed
+ * number of simulated workers, starting once a worker is free. A task
+ * accounts for the time it takes by calling {@link #spend(Duration)},
+ * typically from a simulated {@link org.batch.BatchProcessor}, which
+ * keeps its worker busy for that long. Timer tasks take no time.
+ *
+ * Tasks run on the caller's thread one at a time, so a task's effects
+ * on shared state are visible as soon as it starts rather than when its
+ * simulated time has been spent. For a batcher this only matters when a
+ * submission arrives while a batch is being processed, and it changes
+ * which dispatch task picks the submission up, not when.
+ *
+ * Batchers must not be shut down with a blocking call while the
+ * simulation is not running - see {@link #run()}.
+ */
+public class MBSimulatedRuntime implements BatcherRuntime {
+    private final long[] workerFreeAt;
+    private final PriorityQueue<ScheduledTask> timers;
+    private final ArrayDeque<ScheduledTask> ready;
+    private long now;
+    private long sequence;
+    private long busyNanos;
+    private long lastWorkerEnd;
+    private boolean isShutdown;
+
+    /**
+     * @param workerThreads Number of simulated worker threads.
+     */
+    public MBSimulatedRuntime(int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.workerFreeAt = new long[workerThreads];
+        this.timers = new PriorityQueue<>(Comparator.comparingLong((ScheduledTask task) -> task.time)
+                .thenComparingLong(task -> task.sequence));
+        this.ready = new ArrayDeque<>();
+    }
+
+    @Override
+    public Timeout schedule(Duration delay, Runnable task) {
+        var scheduled = new ScheduledTask(now + Math.max(delay.toNanos(), 0), sequence++, task);
+        if (!isShutdown) {
+            timers.add(scheduled);
+        }
+        return scheduled;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        ready.add(new ScheduledTask(now, sequence++, task));
+    }
+
+    /**
+     * @return the current virtual time, in nanoseconds since the
+     *         simulation started.
+     */
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Account for time spent by the task that is running, advancing the
+     * clock. On a worker, keeps the worker busy for that long.
+     */
+    public void spend(Duration duration) {
+        now += Math.max(duration.toNanos(), 0);
+    }
+
+    /**
+     * Run scheduled tasks in virtual time order until there are none left.
+     *
+     * To shut down a batcher on this runtime, start the shutdown without
+     * waiting, e.g. with {@code shutdown(Duration.ZERO)}, call this method
+     * so that the remaining jobs are dispatched, then call
+     * {@code shutdown()} to release the batcher's resources.
+     */
+    public void run() {
+        while (true) {
+            int worker = earliestFreeWorker();
+            ScheduledTask timer = timers.peek();
+            ScheduledTask next = ready.peekFirst();
+            long workerStart = next == null ? Long.MAX_VALUE : Math.max(next.time, workerFreeAt[worker]);
+            if (timer != null && timer.time < workerStart) {
+                timers.poll();
+                now = timer.time;
+                timer.run();
+            } else if (next != null) {
+                ready.pollFirst();
+                now = workerStart;
+                next.run();
+                busyNanos += now - workerStart;
+                workerFreeAt[worker] = now;
+                lastWorkerEnd = Math.max(lastWorkerEnd, now);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return total virtual time the workers have spent running tasks.
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * @return the virtual time at which the last worker task finished.
+     */
+    public long getLastWorkerEnd() {
+        return lastWorkerEnd;
+    }
+
+    public int getWorkerThreads() {
+        return workerFreeAt.length;
+    }
+
+    /**
+     * Discard pending timer tasks. Tasks already handed to the workers
+     * still run on the next call to {@link #run()}.
+     */
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        timers.clear();
+    }
+
+    private int earliestFreeWorker() {
+        int earliest = 0;
+        for (int i = 1; i < workerFreeAt.length; i++) {
+            if (workerFreeAt[i] < workerFreeAt[earliest]) {
+                earliest = i;
+            }
+        }
+        return earliest;
+    }
+
+    private static class ScheduledTask implements Timeout {
+        private final long time;
+        private final long sequence;
+        private final Runnable task;
+        private boolean done;
+
+        ScheduledTask(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        void run() {
+            if (!done) {
+                done = true;
+                task.run();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+    }
+}
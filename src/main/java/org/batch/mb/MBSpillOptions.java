@@ -0,0 +1,112 @@
+package org.batch.mb;
+
+import org.batch.Codec;
+
+import java.nio.file.Path;
+
+/**
+ * Options for spilling an {@link MBBatcher}'s backlog to disk - see
+ * {@link MBSpillQueue}.
+ *
+ * <pre>{@code
+ * MBSpillOptions<String> spill = new MBSpillOptions.Builder<>(MBCodecs.strings(), Path.of("/var/spool/batcher"))
+ *         .withMemoryThreshold(100_000)
+ *         .build();
+ * MicroBatcher<String, String> microBatcher = new MBBatcher<>(options, batchProcessor, null, spill);
+ * }</pre>
+ *
+ * @param <TInput> Type parameter for job inputs.
+ */
+public class MBSpillOptions<TInput> {
+    private static final int DEFAULT_MEMORY_THRESHOLD = 10_000;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Codec<TInput> codec;
+    private final Path directory;
+    private final int memoryThreshold;
+    private final int segmentSize;
+
+    public MBSpillOptions(Builder<TInput> builder) {
+        this.codec = builder.getCodec();
+        this.directory = builder.getDirectory();
+        this.memoryThreshold = builder.getMemoryThreshold();
+        this.segmentSize = builder.getSegmentSize();
+    }
+
+    /**
+     * Encodes job inputs into the segment files.
+     */
+    public Codec<TInput> codec() {
+        return codec;
+    }
+
+    /**
+     * Directory the segment files are created in. It must not be shared
+     * with another queue, because segment files left in it are deleted
+     * when a queue is created.
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Number of queued jobs held on the heap before further jobs are spilled.
+     */
+    public int memoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Size in bytes of each memory-mapped segment file.
+     */
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    public static class Builder<TInput> {
+        private final Codec<TInput> codec;
+        private final Path directory;
+        private int memoryThreshold;
+        private int segmentSize;
+
+        public Builder(Codec<TInput> codec, Path directory) {
+            this.codec = codec;
+            this.directory = directory;
+            this.memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+            this.segmentSize = DEFAULT_SEGMENT_SIZE;
+        }
+
+        public Codec<TInput> getCodec() {
+            return codec;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public int getMemoryThreshold() {
+            return memoryThreshold;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public Builder<TInput> withMemoryThreshold(int memoryThreshold) {
+            this.memoryThreshold = memoryThreshold;
+            return this;
+        }
+
+        /**
+         * Size of each segment file. An encoded input must fit in one segment.
+         */
+        public Builder<TInput> withSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public MBSpillOptions<TInput> build() {
+            return new MBSpillOptions<>(this);
+        }
+    }
+}
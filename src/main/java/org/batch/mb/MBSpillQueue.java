@@ -0,0 +1,480 @@
+package org.batch.mb;
+
+import org.batch.Codec;
+import org.batch.JobResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Unbounded FIFO {@link BlockingQueue} of pending jobs that spills its
+ * backlog to memory-mapped files once it holds more than a threshold of
+ * jobs on the heap.
+ *
+ * Up to the threshold, jobs are queued as they are. Beyond it, and for as
+ * long as any spilled jobs remain, each job's input is encoded with the
+ * {@link Codec} into the current segment file, and only a small handle
+ * with the job's future stays on the heap. Spilled jobs are read back in
+ * order as they are taken, so the backlog is limited by disk space rather
+ * than heap. Segment files are deleted once they have been read, and any
+ * left behind by a queue that wasn't closed are deleted when the next
+ * queue is created in the directory.
+ *
+ * A spilled job is read back as a new {@link MBJob} holding the decoded
+ * input, so the processor does not see the {@link org.batch.Job} object
+ * that was submitted. Jobs without a {@link org.batch.Job}, such as the
+ * batcher's wake-up marker, are never spilled, but keep their place in
+ * the queue.
+ *
+ * If the codec fails to encode an input, {@link #offer} throws and the
+ * segment is left as it was. If it fails to decode one, that job's future
+ * completes with the exception and the job is skipped. The job is marked
+ * done in the batcher's write-ahead log, if there is one, as it would be
+ * if it had been processed.
+ *
+ * Each record is a four-byte length, or -1 for a null input, followed by
+ * the encoded input. A single lock guards the queue, and the iterator is
+ * a snapshot of the jobs held on the heap only.
+ *
+ * @param <TInput> Type parameter for job inputs.
+ * @param <TOutput> Type parameter for job outputs.
+ */
+public class MBSpillQueue<TInput, TOutput> extends AbstractQueue<MBPendingJob<TInput, TOutput>>
+        implements BlockingQueue<MBPendingJob<TInput, TOutput>>, AutoCloseable {
+    private static final int NULL_LENGTH = -1;
+    private static final String SEGMENT_PREFIX = "mb-spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Codec<TInput> codec;
+    private final Path directory;
+    private final int memoryThreshold;
+    private final int segmentSize;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final ArrayDeque<MBPendingJob<TInput, TOutput>> inMemory;
+    private final ArrayDeque<Spilled<TInput, TOutput>> spilled;
+    private final ArrayDeque<Segment> segments;
+    private final MBWriteAheadLog<TInput> log;
+
+    public MBSpillQueue(MBSpillOptions<TInput> options) {
+        this(options, null);
+    }
+
+    /**
+     * Segment files left in the directory by a previous run are deleted.
+     *
+     * @param log Log the jobs were appended to, or null. A job whose input
+     *            can't be read back is marked done in it, so that it isn't
+     *            replayed after a restart only to fail again.
+     * @throws UncheckedIOException if the directory can't be read.
+     */
+    public MBSpillQueue(MBSpillOptions<TInput> options, MBWriteAheadLog<TInput> log) {
+        if (options.memoryThreshold() < 0 || options.segmentSize() <= Integer.BYTES) {
+            throw new IllegalArgumentException("Memory threshold must not be negative, and segments must hold a record");
+        }
+        this.codec = options.codec();
+        this.directory = options.directory();
+        this.memoryThreshold = options.memoryThreshold();
+        this.segmentSize = options.segmentSize();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.inMemory = new ArrayDeque<>();
+        this.spilled = new ArrayDeque<>();
+        this.segments = new ArrayDeque<>();
+        this.log = log;
+        deleteLeftoverSegments();
+    }
+
+    /**
+     * Queue a job, spilling its input to disk if the heap threshold has
+     * been reached or earlier jobs have been spilled.
+     *
+     * @throws IllegalArgumentException if the encoded input doesn't fit in a segment.
+     * @throws UncheckedIOException if a segment file can't be created.
+     */
+    @Override
+    public boolean offer(MBPendingJob<TInput, TOutput> pendingJob) {
+        if (pendingJob == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            if (spilled.isEmpty() && inMemory.size() < memoryThreshold) {
+                inMemory.add(pendingJob);
+            } else {
+                spilled.add(spill(pendingJob));
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(MBPendingJob<TInput, TOutput> pendingJob) {
+        offer(pendingJob);
+    }
+
+    @Override
+    public boolean offer(MBPendingJob<TInput, TOutput> pendingJob, long timeout, TimeUnit unit) {
+        return offer(pendingJob);
+    }
+
+    @Override
+    public MBPendingJob<TInput, TOutput> poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MBPendingJob<TInput, TOutput> take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            MBPendingJob<TInput, TOutput> pendingJob;
+            do {
+                while (isEmptyLocked()) {
+                    notEmpty.await();
+                }
+                pendingJob = dequeue();
+            } while (pendingJob == null);
+            return pendingJob;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MBPendingJob<TInput, TOutput> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            MBPendingJob<TInput, TOutput> pendingJob;
+            do {
+                while (isEmptyLocked()) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+                pendingJob = dequeue();
+            } while (pendingJob == null);
+            return pendingJob;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the next job held on the heap. If the heap tier is empty
+     *         but jobs have been spilled, the next one is read back first.
+     */
+    @Override
+    public MBPendingJob<TInput, TOutput> peek() {
+        lock.lock();
+        try {
+            if (inMemory.isEmpty()) {
+                MBPendingJob<TInput, TOutput> pendingJob = dequeue();
+                if (pendingJob != null) {
+                    inMemory.add(pendingJob);
+                }
+            }
+            return inMemory.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return inMemory.size() + spilled.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of jobs currently spilled to disk.
+     */
+    public int spilledSize() {
+        lock.lock();
+        try {
+            return spilled.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of segment files currently in use.
+     */
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super MBPendingJob<TInput, TOutput>> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super MBPendingJob<TInput, TOutput>> collection, int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself");
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            MBPendingJob<TInput, TOutput> pendingJob;
+            while (drained < maxElements && (pendingJob = dequeue()) != null) {
+                collection.add(pendingJob);
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<MBPendingJob<TInput, TOutput>> iterator() {
+        lock.lock();
+        try {
+            List<MBPendingJob<TInput, TOutput>> snapshot = new ArrayList<>(inMemory);
+            return Collections.unmodifiableList(snapshot).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete any segment files left. Jobs still spilled are lost, so only
+     * call this once the queue has been drained.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            spilled.clear();
+            while (!segments.isEmpty()) {
+                segments.poll().delete();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete the segment files of a queue that wasn't closed, e.g. after a
+     * crash. The spilled backlog doesn't survive a restart, so they can't
+     * be read back.
+     */
+    private void deleteLeftoverSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isEmptyLocked() {
+        return inMemory.isEmpty() && spilled.isEmpty();
+    }
+
+    /**
+     * Take the next job, from the heap while any are held there,
+     * then from disk. Must hold the lock.
+     *
+     * @return the next job, or null if there are none left that can be read.
+     */
+    private MBPendingJob<TInput, TOutput> dequeue() {
+        if (!inMemory.isEmpty()) {
+            return inMemory.poll();
+        }
+        while (!spilled.isEmpty()) {
+            MBPendingJob<TInput, TOutput> pendingJob = readBack(spilled.poll());
+            if (pendingJob != null) {
+                return pendingJob;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append a job's input to the last segment, starting a new segment if
+     * it doesn't fit. Must hold the lock.
+     */
+    private Spilled<TInput, TOutput> spill(MBPendingJob<TInput, TOutput> pendingJob) {
+        if (pendingJob.getJob() == null) {
+            return new Spilled<>(pendingJob);
+        }
+        TInput input = pendingJob.getJob().getInput();
+        int length = input == null ? 0 : codec.encodedSize(input);
+        int recordSize = Integer.BYTES + length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Encoded input of %d bytes does not fit in a %d byte segment", length, segmentSize));
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writeBuffer.remaining() < recordSize) {
+            segment = new Segment(directory, segmentSize);
+            segments.add(segment);
+        }
+        int start = segment.writeBuffer.position();
+        if (input == null) {
+            segment.writeBuffer.putInt(NULL_LENGTH);
+        } else {
+            // Encode before committing the length, so a codec that throws
+            // or writes the wrong number of bytes leaves no partial record.
+            ByteBuffer record = segment.writeBuffer.slice(start + Integer.BYTES, length);
+            codec.encode(input, record);
+            if (record.position() != length) {
+                throw new IllegalStateException("Codec wrote a different number of bytes than its encodedSize");
+            }
+            segment.writeBuffer.putInt(start, length);
+            segment.writeBuffer.position(start + recordSize);
+        }
+        return new Spilled<>(pendingJob);
+    }
+
+    /**
+     * Read the next spilled input back as a pending job with the original
+     * future. Segments are deleted once every record has been read. Must
+     * hold the lock.
+     *
+     * @return the job, or null if its input couldn't be decoded - its
+     *         future is then completed with the exception instead.
+     */
+    private MBPendingJob<TInput, TOutput> readBack(Spilled<TInput, TOutput> handle) {
+        if (handle.marker != null) {
+            return handle.marker;
+        }
+        Segment segment = segments.peek();
+        while (segment.readBuffer.position() == segment.writeBuffer.position()) {
+            // Fully read, and a later segment holds the next record.
+            segments.poll().delete();
+            segment = segments.peek();
+        }
+        int length = segment.readBuffer.getInt();
+        TInput input = null;
+        RuntimeException decodeFailure = null;
+        if (length != NULL_LENGTH) {
+            try {
+                input = codec.decode(segment.readBuffer.slice(segment.readBuffer.position(), length));
+            } catch (RuntimeException e) {
+                decodeFailure = e;
+            }
+            segment.readBuffer.position(segment.readBuffer.position() + length);
+        }
+        if (segment.readBuffer.position() == segment.writeBuffer.position() && segments.size() > 1) {
+            segments.poll().delete();
+        }
+        if (decodeFailure != null) {
+            MBJobResult<TOutput> failed = new MBJobResult<>();
+            failed.setException(decodeFailure);
+            handle.jobResult.complete(failed);
+            if (log != null && handle.logId != MBPendingJob.NOT_LOGGED) {
+                log.markDone(handle.logId);
+            }
+            return null;
+        }
+        var job = new MBJob<TInput>();
+        job.setInput(input);
+        return new MBPendingJob<>(job, handle.tenantId, handle.submitNanos, handle.jobResult, handle.logId);
+    }
+
+    /**
+     * What stays on the heap for a spilled job. Jobs that can't be spilled
+     * are held as they are.
+     */
+    private static class Spilled<TInput, TOutput> {
+        private final MBPendingJob<TInput, TOutput> marker;
+        private final CompletableFuture<JobResult<TOutput>> jobResult;
+        private final String tenantId;
+        private final long submitNanos;
+        private final long logId;
+
+        Spilled(MBPendingJob<TInput, TOutput> pendingJob) {
+            this.marker = pendingJob.getJob() == null ? pendingJob : null;
+            this.jobResult = pendingJob.getJobResult();
+            this.tenantId = pendingJob.getTenantId();
+            this.submitNanos = pendingJob.getSubmitNanos();
+            this.logId = pendingJob.getLogId();
+        }
+    }
+
+    /**
+     * A memory-mapped segment file, written at one position and read at another.
+     */
+    private static class Segment {
+        private final Path file;
+        private final ByteBuffer writeBuffer;
+        private final ByteBuffer readBuffer;
+
+        Segment(Path directory, int size) {
+            try {
+                this.file = Files.createTempFile(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // The mapping stays valid once the channel is closed.
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    this.writeBuffer = mapped;
+                    this.readBuffer = mapped.duplicate();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Delete the file. The mapping itself is released when the
+         * buffers are garbage collected.
+         */
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
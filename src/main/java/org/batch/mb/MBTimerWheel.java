@@ -0,0 +1,180 @@
+package org.batch.mb;
+
+import org.batch.BatcherRuntime;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timer wheel used by {@link MBBatcherRuntime} for linger deadlines.
+ *
+ * The wheel is a ring of buckets, each covering one tick. A timeout is
+ * hashed into the bucket for its deadline, along with the number of full
+ * rotations remaining before it is due. A single thread advances the wheel
+ * one bucket per tick and runs any timeouts that have come due.
+ *
+ * Scheduling and cancelling are O(1) and never block - new timeouts are
+ * handed to the wheel thread through a lock-free queue, and cancelled
+ * timeouts are simply skipped and discarded when their bucket is visited.
+ * The trade-off is precision: timeouts fire up to one tick late.
+ *
+ * Timeouts are run on the wheel thread, so tasks must be short.
+ */
+public class MBTimerWheel {
+    private static final Logger LOGGER = Logger.getLogger(MBTimerWheel.class.getName());
+
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<WheelTimeout>[] wheel;
+    private final Queue<WheelTimeout> newTimeouts;
+    private final long startTime;
+    private final Thread thread;
+    private volatile boolean running;
+    private long tick;
+
+    /**
+     * @param tickDuration Resolution of the wheel.
+     * @param wheelSize Number of buckets, rounded up to a power of two.
+     * @param threadFactory Used to create the wheel thread.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MBTimerWheel(Duration tickDuration, int wheelSize, ThreadFactory threadFactory) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+        this.tickNanos = Math.max(tickDuration.toNanos(), 1);
+        this.mask = size - 1;
+        this.wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.newTimeouts = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Run a task once the delay has elapsed.
+     */
+    public BatcherRuntime.Timeout schedule(Duration delay, Runnable task) {
+        long deadline = System.nanoTime() - startTime + delay.toNanos();
+        var timeout = new WheelTimeout(deadline, task);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the wheel thread, discarding any outstanding timeouts.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            waitForNextTick();
+            transferTimeouts();
+            expireTimeouts(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * Park until the end of the current tick.
+     */
+    private void waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (running) {
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    /**
+     * Move newly scheduled timeouts into their buckets.
+     *
+     * Timeouts whose deadline has already passed go into the current
+     * bucket so they are run on this tick.
+     */
+    private void transferTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<WheelTimeout> bucket) {
+        Iterator<WheelTimeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            WheelTimeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private static class WheelTimeout implements BatcherRuntime.Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final long deadline;
+        private final Runnable task;
+        private final AtomicInteger state;
+        // Only accessed from the wheel thread.
+        private long remainingRounds;
+
+        WheelTimeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+            this.state = new AtomicInteger(PENDING);
+        }
+
+        @Override
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Timer task threw an exception", e);
+            }
+        }
+    }
+}
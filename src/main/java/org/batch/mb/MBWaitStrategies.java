@@ -0,0 +1,95 @@
+package org.batch.mb;
+
+import org.batch.WaitStrategy;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link WaitStrategy} implementations, from lowest CPU use to lowest latency.
+ */
+public final class MBWaitStrategies {
+    private MBWaitStrategies() {
+    }
+
+    /**
+     * Block on the queue until a job arrives. Uses no CPU while idle,
+     * but each job arriving at an idle batcher waits for the thread to
+     * be woken. This is the default.
+     */
+    public static WaitStrategy blocking() {
+        return new WaitStrategy() {
+            @Override
+            public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    /**
+     * Spin on the queue, then yield the CPU, then park for short periods
+     * until a job arrives. Jobs arriving soon after the last one are picked
+     * up without a wake-up, while a quiet batcher settles into parking.
+     *
+     * @param spinTries Number of times to check the queue in a tight loop.
+     * @param yieldTries Number of further checks, yielding the CPU between each.
+     * @param maxParkNanos Longest to park between checks after that.
+     */
+    public static WaitStrategy spinThenPark(int spinTries, int yieldTries, long maxParkNanos) {
+        return new WaitStrategy() {
+            @Override
+            public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                long deadline = System.nanoTime() + timeoutNanos;
+                int tries = 0;
+                while (true) {
+                    T element = queue.poll();
+                    if (element != null) {
+                        return element;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (tries < spinTries) {
+                        Thread.onSpinWait();
+                    } else if (tries < spinTries + yieldTries) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(Math.min(remaining, maxParkNanos));
+                    }
+                    tries++;
+                }
+            }
+        };
+    }
+
+    /**
+     * Check the queue in a tight loop until a job arrives. Lowest latency,
+     * but occupies a core at 100% for as long as the batcher is running.
+     */
+    public static WaitStrategy busySpin() {
+        return new WaitStrategy() {
+            @Override
+            public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                long deadline = System.nanoTime() + timeoutNanos;
+                while (true) {
+                    T element = queue.poll();
+                    if (element != null) {
+                        return element;
+                    }
+                    if (deadline - System.nanoTime() <= 0) {
+                        return null;
+                    }
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,508 @@
+package org.batch.mb;
+
+import org.batch.Codec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of accepted jobs, kept in memory-mapped segment files,
+ * so that jobs submitted to a {@link MBBatcher} survive a crash.
+ *
+ * {@link #append} writes a job's input and returns once the record has
+ * been forced to disk. Forcing is shared between submitters: while one
+ * thread forces the log, others append behind it, and the next force
+ * covers all of them (group commit). So concurrent submitters pay for
+ * one sync per group rather than one each. A new segment file is synced
+ * along with its directory entry before any record is written to it.
+ *
+ * Once a job's batch has been processed, {@link #markDone} appends a
+ * done record, without forcing. A segment file is deleted once every job
+ * in it and in the segments before it is done.
+ *
+ * When a log is opened, the segments left in the directory are scanned
+ * and the jobs without a done record are available from
+ * {@link #drainRecovered()}, in the order they were appended. A done
+ * record lost in a crash means its job is replayed, so jobs are processed
+ * at least once. A record torn by a crash fails its checksum, and the
+ * rest of that segment is ignored. New records always go to a new segment.
+ *
+ * Each record is a type byte, an eight-byte job ID, a four-byte length
+ * (-1 for a null input, 0 for a done record), the encoded input and a
+ * CRC32 of everything before it. Unwritten space in a segment is zeros,
+ * which marks the end of its records.
+ *
+ * @param <TInput> Type parameter for job inputs.
+ */
+public class MBWriteAheadLog<TInput> implements AutoCloseable {
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte JOB = 1;
+    private static final byte DONE = 2;
+    private static final int NULL_LENGTH = -1;
+    private static final int HEADER_SIZE = Byte.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int CHECKSUM_SIZE = Integer.BYTES;
+
+    private final Codec<TInput> codec;
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock;
+    private final Condition forced;
+    private final ArrayDeque<Segment> segments;
+    private final Map<Long, Segment> unfinished;
+    private Map<Long, TInput> recovered;
+    private long nextSegmentNumber;
+    private long nextId;
+    private long writtenBytes;
+    private long durableBytes;
+    private boolean forcing;
+    private long forceCount;
+
+    public MBWriteAheadLog(Builder<TInput> builder) {
+        if (builder.getSegmentSize() < HEADER_SIZE + CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("Segments must hold at least one record");
+        }
+        this.codec = builder.getCodec();
+        this.directory = builder.getDirectory();
+        this.segmentSize = builder.getSegmentSize();
+        this.lock = new ReentrantLock();
+        this.forced = lock.newCondition();
+        this.segments = new ArrayDeque<>();
+        this.unfinished = new HashMap<>();
+        this.recovered = new LinkedHashMap<>();
+        recover();
+    }
+
+    /**
+     * Append a job and wait until it is on disk.
+     *
+     * The input is encoded before anything is written, so if the codec
+     * fails, the log is left as it was.
+     *
+     * @return the ID to pass to {@link #markDone} once the job is processed.
+     * @throws IllegalArgumentException if the encoded input doesn't fit in a segment.
+     * @throws IllegalStateException if the codec writes a different number
+     *         of bytes than its encoded size.
+     * @throws UncheckedIOException if the log can't be written.
+     */
+    public long append(TInput input) {
+        int length = input == null ? NULL_LENGTH : codec.encodedSize(input);
+        ByteBuffer payload = null;
+        if (length > 0) {
+            payload = ByteBuffer.allocate(length);
+            codec.encode(input, payload);
+            if (payload.position() != length) {
+                throw new IllegalStateException("Codec wrote a different number of bytes than its encodedSize");
+            }
+            payload.flip();
+        }
+        long id;
+        long position;
+        lock.lock();
+        try {
+            Segment segment = segmentFor(Math.max(length, 0));
+            id = nextId++;
+            segment.write(JOB, id, length, payload);
+            unfinished.put(id, segment);
+            segment.live++;
+            position = writtenBytes;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(position);
+        return id;
+    }
+
+    /**
+     * Record that jobs have been processed. Not forced - if the records
+     * are lost in a crash, the jobs are replayed.
+     */
+    public void markDone(long... ids) {
+        lock.lock();
+        try {
+            for (long id : ids) {
+                Segment segment = unfinished.remove(id);
+                if (segment == null) {
+                    continue;
+                }
+                segmentFor(0).write(DONE, id, 0, null);
+                segment.live--;
+            }
+            deleteFinishedSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the jobs found unfinished when the log was opened, in the
+     * order they were appended, keyed by job ID. Returns an empty map
+     * after the first call.
+     */
+    public Map<Long, TInput> drainRecovered() {
+        lock.lock();
+        try {
+            Map<Long, TInput> drained = recovered;
+            recovered = new LinkedHashMap<>();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of jobs appended and not yet marked done.
+     */
+    public int unfinishedCount() {
+        lock.lock();
+        try {
+            return unfinished.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of segment files in use.
+     */
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times the log has been forced. Each force covers
+     *         every record appended before it started.
+     */
+    long forceCount() {
+        lock.lock();
+        try {
+            return forceCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Force any outstanding records to disk. Segment files are kept, so
+     * unfinished jobs are recovered when the log is next opened.
+     */
+    @Override
+    public void close() {
+        long position;
+        lock.lock();
+        try {
+            position = writtenBytes;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    /**
+     * Wait until the log has been forced up to the given position. If no
+     * thread is forcing, this one forces everything written so far, with
+     * the lock released so that other submitters can append meanwhile.
+     */
+    private void awaitDurable(long position) {
+        lock.lock();
+        try {
+            while (durableBytes < position) {
+                if (forcing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+                forceCount++;
+                long target = writtenBytes;
+                List<long[]> regions = new ArrayList<>();
+                List<Segment> toForce = new ArrayList<>();
+                for (Segment segment : segments) {
+                    if (segment.forcedPosition < segment.position()) {
+                        toForce.add(segment);
+                        regions.add(new long[]{segment.forcedPosition, segment.position()});
+                    }
+                }
+                lock.unlock();
+                try {
+                    for (int i = 0; i < toForce.size(); i++) {
+                        long[] region = regions.get(i);
+                        force(toForce.get(i).buffer, (int) region[0], (int) (region[1] - region[0]));
+                    }
+                } finally {
+                    lock.lock();
+                    forcing = false;
+                    forced.signalAll();
+                }
+                for (int i = 0; i < toForce.size(); i++) {
+                    Segment segment = toForce.get(i);
+                    segment.forcedPosition = Math.max(segment.forcedPosition, (int) regions.get(i)[1]);
+                }
+                durableBytes = Math.max(durableBytes, target);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Force a region of a segment to disk. Called without the lock held.
+     */
+    void force(MappedByteBuffer buffer, int index, int length) {
+        buffer.force(index, length);
+    }
+
+    /**
+     * The segment to write a record with the given payload size to,
+     * starting a new one if the last is full. Must hold the lock.
+     */
+    private Segment segmentFor(int payloadSize) {
+        int recordSize = HEADER_SIZE + payloadSize + CHECKSUM_SIZE;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Encoded input of %d bytes does not fit in a %d byte segment", payloadSize, segmentSize));
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.sealed || segment.buffer.remaining() < recordSize) {
+            if (segment != null) {
+                segment.sealed = true;
+            }
+            segment = Segment.create(directory.resolve(segmentName(nextSegmentNumber++)), segmentSize);
+            segments.add(segment);
+        }
+        writtenBytes += recordSize;
+        return segment;
+    }
+
+    /**
+     * Delete segments from the oldest while all their jobs are done. The
+     * done records of a segment's jobs are never in an earlier segment,
+     * so deleting in order can't lose a done record that's still needed.
+     */
+    private void deleteFinishedSegments() {
+        while (segments.size() > 1 && segments.peek().live == 0) {
+            segments.poll().delete();
+        }
+    }
+
+    /**
+     * Scan the segments left by a previous run, oldest first, and keep
+     * those with unfinished jobs. They are sealed, so new records go to
+     * a new segment.
+     */
+    private void recover() {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            segment.sealed = true;
+            segments.add(segment);
+            String name = file.getFileName().toString();
+            nextSegmentNumber = Math.max(nextSegmentNumber,
+                    Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())) + 1);
+
+            ByteBuffer buffer = segment.buffer.duplicate().position(0);
+            while (buffer.remaining() >= HEADER_SIZE + CHECKSUM_SIZE) {
+                int start = buffer.position();
+                byte type = buffer.get();
+                long id = buffer.getLong();
+                int length = buffer.getInt();
+                int payloadSize = Math.max(length, 0);
+                if ((type != JOB && type != DONE) || payloadSize > buffer.remaining() - CHECKSUM_SIZE
+                        || buffer.getInt(start + HEADER_SIZE + payloadSize) != checksum(buffer, start, payloadSize)) {
+                    // End of the records, or a record torn by a crash.
+                    break;
+                }
+                nextId = Math.max(nextId, id + 1);
+                if (type == JOB) {
+                    TInput input = length == NULL_LENGTH ? null
+                            : codec.decode(buffer.slice(start + HEADER_SIZE, length));
+                    recovered.put(id, input);
+                    unfinished.put(id, segment);
+                    segment.live++;
+                } else {
+                    recovered.remove(id);
+                    Segment jobSegment = unfinished.remove(id);
+                    if (jobSegment != null) {
+                        jobSegment.live--;
+                    }
+                }
+                buffer.position(start + HEADER_SIZE + payloadSize + CHECKSUM_SIZE);
+            }
+        }
+        while (!segments.isEmpty() && segments.peek().live == 0) {
+            segments.poll().delete();
+        }
+    }
+
+    private static String segmentName(long number) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int payloadSize) {
+        var crc = new CRC32();
+        crc.update(buffer.slice(start, HEADER_SIZE + payloadSize));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int forcedPosition;
+        private int live;
+        private boolean sealed;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Create and map a new segment file. The file's size and its
+         * directory entry are forced to disk before it is used, otherwise
+         * a crash could lose the whole file along with records that were
+         * forced into it.
+         */
+        static Segment create(Path file, int size) {
+            Segment segment = map(file, size, true);
+            try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return segment;
+        }
+
+        static Segment open(Path file) {
+            try {
+                return map(file, Files.size(file), false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static Segment map(Path file, long size, boolean create) {
+            var options = new ArrayList<>(List.of(StandardOpenOption.READ, StandardOpenOption.WRITE));
+            if (create) {
+                options.add(StandardOpenOption.CREATE_NEW);
+            }
+            try (FileChannel channel = FileChannel.open(file, options.toArray(new StandardOpenOption[0]))) {
+                // The mapping stays valid once the channel is closed.
+                var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (create) {
+                    // Mapping grew the new file to its full size.
+                    channel.force(true);
+                }
+                return new Segment(file, buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int position() {
+            return buffer.position();
+        }
+
+        /**
+         * Write a record. The caller has checked that it fits.
+         *
+         * @param payload Encoded input, or null if there is none.
+         */
+        void write(byte type, long id, int length, ByteBuffer payload) {
+            int start = buffer.position();
+            buffer.put(type);
+            buffer.putLong(id);
+            buffer.putInt(length);
+            if (payload != null) {
+                buffer.put(payload);
+            }
+            buffer.putInt(checksum(buffer, start, Math.max(length, 0)));
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static class Builder<TInput> {
+        private final Codec<TInput> codec;
+        private final Path directory;
+        private int segmentSize;
+
+        /**
+         * @param codec Encodes job inputs into the log.
+         * @param directory Directory holding the log's segment files,
+         *                  which must not be shared with another log.
+         */
+        public Builder(Codec<TInput> codec, Path directory) {
+            this.codec = codec;
+            this.directory = directory;
+            this.segmentSize = DEFAULT_SEGMENT_SIZE;
+        }
+
+        public Codec<TInput> getCodec() {
+            return codec;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        /**
+         * Size of each segment file. An encoded input must fit in one segment.
+         */
+        public Builder<TInput> withSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Open the log, recovering any unfinished jobs left in the directory.
+         *
+         * @throws UncheckedIOException if the directory can't be read.
+         */
+        public MBWriteAheadLog<TInput> build() {
+            return new MBWriteAheadLog<>(this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.batch.transport;
+
+import org.batch.BatchProcessor;
+import org.batch.Codec;
+import org.batch.JobResult;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts a {@link BatchProcessor} for {@link RemoteBatchProcessor} clients.
+ *
+ * A single event loop thread accepts connections and reads request
+ * frames. Each batch is decoded and processed on a worker pool, so
+ * batches pipelined on one connection are processed concurrently and
+ * their responses may be sent back out of order.
+ *
+ * If the processor throws an exception, the exception's class name and
+ * message are sent back and rethrown by the client as a
+ * {@link RemoteProcessingException}.
+ *
+ * @param <TInput> Type parameter for job input.
+ * @param <TOutput> Type parameter for job output.
+ */
+public class BatchProcessorServer<TInput, TOutput> implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(BatchProcessorServer.class.getName());
+    private static final AtomicInteger SERVER_COUNT = new AtomicInteger();
+
+    private final BatchProcessor<TInput, TOutput> processor;
+    private final Codec<TInput> inputCodec;
+    private final Codec<TOutput> outputCodec;
+    private final InetSocketAddress bindAddress;
+    private final ExecutorService workers;
+    private final NioEventLoop loop;
+    private ServerSocketChannel serverChannel;
+
+    public BatchProcessorServer(Builder<TInput, TOutput> builder) {
+        int serverNumber = SERVER_COUNT.incrementAndGet();
+        this.processor = builder.getProcessor();
+        this.inputCodec = builder.getInputCodec();
+        this.outputCodec = builder.getOutputCodec();
+        this.bindAddress = builder.getAddress();
+        var workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(builder.getWorkerThreads(), runnable -> new Thread(runnable,
+                String.format("mb-transport-server-%d-worker-%d", serverNumber, workerCount.getAndIncrement())));
+        this.loop = new NioEventLoop(String.format("mb-transport-server-%d", serverNumber));
+    }
+
+    /**
+     * Bind the server socket and start accepting connections.
+     *
+     * @return the address the server is listening on - useful when
+     *         binding to port 0.
+     */
+    public InetSocketAddress start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(bindAddress);
+        serverChannel.configureBlocking(false);
+        loop.execute(() -> {
+            try {
+                loop.register(serverChannel, SelectionKey.OP_ACCEPT, new Acceptor());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to register server socket", e);
+            }
+        });
+        return getAddress();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Stop accepting connections, close existing ones, and wait for
+     * batches already being processed to finish.
+     */
+    @Override
+    public void close() {
+        loop.close();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Decode, process and respond to one request frame. Runs on the worker pool.
+     */
+    private void handleRequest(NioConnection connection, ByteBuffer frame) {
+        long requestId = frame.getLong();
+        ByteBuffer response;
+        try {
+            List<JobResult<TOutput>> results = processor.process(Frames.decodeJobs(frame, inputCodec));
+            response = Frames.encodeResults(requestId, results, outputCodec);
+        } catch (Exception e) {
+            response = Frames.encodeFailure(requestId, e);
+        }
+        try {
+            connection.send(response);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Client disconnected before results were sent", e);
+        }
+    }
+
+    /**
+     * Accepts client connections on the event loop thread.
+     */
+    private class Acceptor implements NioEventLoop.Handler, NioConnection.Listener {
+        @Override
+        public void onSelected(SelectionKey key) {
+            try {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    new NioConnection(loop, channel, this).start();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to accept connection", e);
+            }
+        }
+
+        @Override
+        public void onLoopClosed() {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close server socket", e);
+            }
+        }
+
+        @Override
+        public void onFrame(NioConnection connection, ByteBuffer frame) {
+            workers.execute(() -> handleRequest(connection, frame));
+        }
+
+        @Override
+        public void onClosed(NioConnection connection, IOException cause) {
+            LOGGER.fine(String.format("Connection closed: %s", cause.getMessage()));
+        }
+    }
+
+    public static class Builder<TInput, TOutput> {
+        private static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+
+        private final BatchProcessor<TInput, TOutput> processor;
+        private final Codec<TInput> inputCodec;
+        private final Codec<TOutput> outputCodec;
+        private InetSocketAddress address;
+        private int workerThreads;
+
+        public Builder(BatchProcessor<TInput, TOutput> processor, Codec<TInput> inputCodec, Codec<TOutput> outputCodec) {
+            this.processor = processor;
+            this.inputCodec = inputCodec;
+            this.outputCodec = outputCodec;
+            this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            this.workerThreads = DEFAULT_WORKER_THREADS;
+        }
+
+        public BatchProcessor<TInput, TOutput> getProcessor() {
+            return processor;
+        }
+
+        public Codec<TInput> getInputCodec() {
+            return inputCodec;
+        }
+
+        public Codec<TOutput> getOutputCodec() {
+            return outputCodec;
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        /**
+         * Address to listen on. Defaults to an ephemeral port on the loopback interface.
+         */
+        public Builder<TInput, TOutput> withAddress(InetSocketAddress address) {
+            this.address = address;
+            return this;
+        }
+
+        /**
+         * Number of batches that can be processed concurrently.
+         */
+        public Builder<TInput, TOutput> withWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public BatchProcessorServer<TInput, TOutput> build() {
+            return new BatchProcessorServer<>(this);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.batch.transport;
+
+import org.batch.Codec;
+import org.batch.Job;
+import org.batch.JobResult;
+import org.batch.mb.MBJob;
+import org.batch.mb.MBJobResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format shared by {@link RemoteBatchProcessor} and
+ * {@link BatchProcessorServer}.
+ *
+ * Every frame starts with an int length, followed by a long request ID
+ * that pairs a response with its request - responses may come back in
+ * any order.
+ *
+ * <pre>
+ * request:  length | requestId | jobCount | input*
+ * response: length | requestId | STATUS_OK | resultCount | result*
+ *           length | requestId | STATUS_FAILED | exceptionClass | message
+ * result:   success | errorMessage | output | exceptionClass | exceptionMessage
+ * </pre>
+ *
+ * Inputs, outputs and strings are written as an int length followed by
+ * the bytes, with a length of -1 for null values.
+ */
+final class Frames {
+    static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_FAILED = 1;
+
+    private static final int NULL_LENGTH = -1;
+
+    private Frames() {
+    }
+
+    static <T> ByteBuffer encodeRequest(long requestId, List<Job<T>> jobs, Codec<T> codec) {
+        int size = Long.BYTES + Integer.BYTES;
+        for (Job<T> job : jobs) {
+            size += valueSize(job.getInput(), codec);
+        }
+        ByteBuffer frame = allocateFrame(size);
+        frame.putLong(requestId);
+        frame.putInt(jobs.size());
+        for (Job<T> job : jobs) {
+            putValue(frame, job.getInput(), codec);
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Decode the jobs in a request frame, positioned after the request ID.
+     */
+    static <T> List<Job<T>> decodeJobs(ByteBuffer frame, Codec<T> codec) {
+        int count = frame.getInt();
+        List<Job<T>> jobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            var job = new MBJob<T>();
+            job.setInput(getValue(frame, codec));
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    static <T> ByteBuffer encodeResults(long requestId, List<JobResult<T>> results, Codec<T> codec) {
+        List<byte[]> strings = new ArrayList<>(results.size() * 3);
+        int size = Long.BYTES + 1 + Integer.BYTES;
+        for (JobResult<T> result : results) {
+            var exception = result.getException();
+            byte[] errorMessage = utf8(result.getErrorMessage());
+            byte[] exceptionClass = utf8(exception.map(e -> e.getClass().getName()).orElse(null));
+            byte[] exceptionMessage = utf8(exception.map(Throwable::getMessage).orElse(null));
+            strings.add(errorMessage);
+            strings.add(exceptionClass);
+            strings.add(exceptionMessage);
+            size += 1 + bytesSize(errorMessage) + valueSize(result.getResult(), codec)
+                    + bytesSize(exceptionClass) + bytesSize(exceptionMessage);
+        }
+        ByteBuffer frame = allocateFrame(size);
+        frame.putLong(requestId);
+        frame.put(STATUS_OK);
+        frame.putInt(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            JobResult<T> result = results.get(i);
+            frame.put((byte) (result.isSuccess() ? 1 : 0));
+            putBytes(frame, strings.get(i * 3));
+            putValue(frame, result.getResult(), codec);
+            putBytes(frame, strings.get(i * 3 + 1));
+            putBytes(frame, strings.get(i * 3 + 2));
+        }
+        return frame.flip();
+    }
+
+    static ByteBuffer encodeFailure(long requestId, Exception exception) {
+        byte[] exceptionClass = utf8(exception.getClass().getName());
+        byte[] message = utf8(exception.getMessage());
+        ByteBuffer frame = allocateFrame(Long.BYTES + 1 + bytesSize(exceptionClass) + bytesSize(message));
+        frame.putLong(requestId);
+        frame.put(STATUS_FAILED);
+        putBytes(frame, exceptionClass);
+        putBytes(frame, message);
+        return frame.flip();
+    }
+
+    /**
+     * Decode the results in a response frame, positioned after the request ID.
+     *
+     * @throws RemoteProcessingException if the remote {@link org.batch.BatchProcessor}
+     *         threw an exception.
+     */
+    static <T> List<JobResult<T>> decodeResults(ByteBuffer frame, Codec<T> codec) {
+        if (frame.get() == STATUS_FAILED) {
+            String exceptionClass = getString(frame);
+            String message = getString(frame);
+            throw new RemoteProcessingException(exceptionClass, message);
+        }
+        int count = frame.getInt();
+        List<JobResult<T>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean success = frame.get() == 1;
+            String errorMessage = getString(frame);
+            T output = getValue(frame, codec);
+            String exceptionClass = getString(frame);
+            String exceptionMessage = getString(frame);
+
+            MBJobResult<T> result = new MBJobResult<>();
+            if (exceptionClass != null) {
+                result.setException(new RemoteProcessingException(exceptionClass, exceptionMessage));
+            }
+            result.setSuccess(success);
+            result.setErrorMessage(errorMessage);
+            result.setResult(output);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static ByteBuffer allocateFrame(int size) {
+        if (size > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame of " + size + " bytes exceeds maximum frame size");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + size);
+        frame.putInt(size);
+        return frame;
+    }
+
+    private static <T> int valueSize(T value, Codec<T> codec) {
+        return Integer.BYTES + (value == null ? 0 : codec.encodedSize(value));
+    }
+
+    private static <T> void putValue(ByteBuffer frame, T value, Codec<T> codec) {
+        if (value == null) {
+            frame.putInt(NULL_LENGTH);
+            return;
+        }
+        // The length is filled in afterwards, rather than asking the codec
+        // for the encoded size a second time.
+        int lengthPosition = frame.position();
+        frame.position(lengthPosition + Integer.BYTES);
+        codec.encode(value, frame);
+        frame.putInt(lengthPosition, frame.position() - lengthPosition - Integer.BYTES);
+    }
+
+    private static <T> T getValue(ByteBuffer frame, Codec<T> codec) {
+        int length = frame.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        ByteBuffer encoded = frame.slice(frame.position(), length);
+        frame.position(frame.position() + length);
+        return codec.decode(encoded);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int bytesSize(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putBytes(ByteBuffer frame, byte[] bytes) {
+        if (bytes == null) {
+            frame.putInt(NULL_LENGTH);
+            return;
+        }
+        frame.putInt(bytes.length);
+        frame.put(bytes);
+    }
+
+    private static String getString(ByteBuffer frame) {
+        int length = frame.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String value = StandardCharsets.UTF_8.decode(frame.slice(frame.position(), length)).toString();
+        frame.position(frame.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,259 @@
+package org.batch.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking socket connection carrying length-prefixed frames.
+ *
+ * Any thread may {@link #send} frames, which are queued and written by the
+ * event loop with gathering writes, so several frames can be in flight on
+ * the connection at once. Complete frames read from the socket are passed
+ * to the {@link Listener} on the event loop thread.
+ *
+ * A connection either wraps a channel that is already connected, see
+ * {@link #start()}, or connects its channel on the event loop, see
+ * {@link #connect}, so that no caller blocks while a peer is unreachable.
+ */
+class NioConnection implements NioEventLoop.Handler {
+    private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_GATHERED_WRITES = 64;
+
+    /**
+     * Receives frames and the close notification, on the event loop thread.
+     */
+    interface Listener {
+        /**
+         * @param frame The frame payload, excluding the length prefix.
+         */
+        void onFrame(NioConnection connection, ByteBuffer frame);
+
+        void onClosed(NioConnection connection, IOException cause);
+    }
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final Listener listener;
+    private final Queue<ByteBuffer> writeQueue;
+    private final ByteBuffer[] gatheredWrites;
+    private ByteBuffer readBuffer;
+    private SelectionKey key;
+    private CompletableFuture<Void> connecting;
+    private volatile boolean closed;
+
+    NioConnection(NioEventLoop loop, SocketChannel channel, Listener listener) {
+        this.loop = loop;
+        this.channel = channel;
+        this.listener = listener;
+        this.writeQueue = new ConcurrentLinkedQueue<>();
+        this.gatheredWrites = new ByteBuffer[MAX_GATHERED_WRITES];
+        this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Register the connection with the event loop and start reading.
+     */
+    void start() throws IOException {
+        channel.configureBlocking(false);
+        loop.execute(() -> {
+            try {
+                key = loop.register(channel, SelectionKey.OP_READ, this);
+                flush();
+            } catch (IOException e) {
+                close(e);
+            }
+        });
+    }
+
+    /**
+     * Connect the channel without blocking, then start reading. If the
+     * connection can't be established within the timeout, it is closed.
+     *
+     * @return completed once connected, or exceptionally once closed.
+     */
+    CompletableFuture<Void> connect(InetSocketAddress address, Duration timeout) throws IOException {
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(address.getHostString());
+        }
+        var connected = new CompletableFuture<Void>();
+        channel.configureBlocking(false);
+        loop.execute(() -> {
+            try {
+                connecting = connected;
+                if (channel.connect(address)) {
+                    key = loop.register(channel, SelectionKey.OP_READ, this);
+                    finishConnect();
+                } else {
+                    key = loop.register(channel, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        });
+        CompletableFuture.delayedExecutor(timeout.toNanos(), TimeUnit.NANOSECONDS).execute(() -> loop.execute(() -> {
+            if (!connected.isDone()) {
+                close(new SocketTimeoutException("Timed out connecting to " + address));
+            }
+        }));
+        return connected;
+    }
+
+    /**
+     * Queue a complete frame, including its length prefix, for writing.
+     */
+    void send(ByteBuffer frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        writeQueue.add(frame);
+        loop.execute(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                close(e);
+            }
+        });
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+                finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    @Override
+    public void onLoopClosed() {
+        close(new IOException("Event loop closed"));
+    }
+
+    /**
+     * Close the channel and notify the listener. Only the first call
+     * has any effect.
+     */
+    void close(IOException cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+        listener.onClosed(this, cause);
+        if (connecting != null) {
+            connecting.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Start reading once the channel is connected, and send anything queued.
+     */
+    private void finishConnect() throws IOException {
+        key.interestOps(SelectionKey.OP_READ);
+        connecting.complete(null);
+        flush();
+    }
+
+    /**
+     * Write as many queued frames as the socket will accept, registering
+     * for write readiness if any remain.
+     */
+    private void flush() throws IOException {
+        if (key == null || closed || !channel.isConnected()) {
+            return;
+        }
+        while (!writeQueue.isEmpty()) {
+            int count = 0;
+            Iterator<ByteBuffer> frames = writeQueue.iterator();
+            while (frames.hasNext() && count < gatheredWrites.length) {
+                gatheredWrites[count++] = frames.next();
+            }
+            channel.write(gatheredWrites, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (gatheredWrites[i].hasRemaining()) {
+                    break;
+                }
+                writeQueue.poll();
+            }
+            boolean blocked = gatheredWrites[count - 1].hasRemaining();
+            Arrays.fill(gatheredWrites, 0, count, null);
+            if (blocked) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Read from the socket and hand each complete frame to the listener.
+     */
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("Connection closed by peer");
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= Integer.BYTES) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > Frames.MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (readBuffer.remaining() < Integer.BYTES + length) {
+                ensureCapacity(Integer.BYTES + length);
+                break;
+            }
+            readBuffer.position(readBuffer.position() + Integer.BYTES);
+            ByteBuffer frame = ByteBuffer.allocate(length);
+            int limit = readBuffer.limit();
+            readBuffer.limit(readBuffer.position() + length);
+            frame.put(readBuffer).flip();
+            readBuffer.limit(limit);
+            listener.onFrame(this, frame);
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Grow the (flipped) read buffer if a frame won't fit in it.
+     */
+    private void ensureCapacity(int frameSize) {
+        if (frameSize <= readBuffer.capacity()) {
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(frameSize, readBuffer.capacity() * 2));
+        larger.put(readBuffer).flip();
+        readBuffer = larger;
+    }
+}
@@ -0,0 +1,131 @@
+package org.batch.transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single thread that owns a {@link Selector} and all the channels
+ * registered with it.
+ *
+ * Channels are only ever touched from the loop thread. Other threads
+ * hand work to it with {@link #execute(Runnable)}, which queues the task
+ * and wakes the selector.
+ */
+class NioEventLoop {
+    private static final Logger LOGGER = Logger.getLogger(NioEventLoop.class.getName());
+
+    /**
+     * Attached to each registered {@link SelectionKey}, and called on the
+     * loop thread when the key is selected.
+     */
+    interface Handler {
+        void onSelected(SelectionKey key);
+
+        /**
+         * Called when the loop shuts down.
+         */
+        void onLoopClosed();
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+    private volatile boolean running;
+
+    NioEventLoop(String threadName) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.running = true;
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run a task on the loop thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Register a channel with the selector. Must be called on the loop thread.
+     */
+    SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Stop the loop thread, closing every registered channel.
+     */
+    void close() {
+        running = false;
+        selector.wakeup();
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        ((Handler) key.attachment()).onSelected(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.log(Level.WARNING, "Event loop failed", e);
+        } finally {
+            runTasks();
+            closeAll();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Event loop task threw an exception", e);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            ((Handler) key.attachment()).onLoopClosed();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close selector", e);
+        }
+    }
+}
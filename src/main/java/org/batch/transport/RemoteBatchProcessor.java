@@ -0,0 +1,362 @@
+package org.batch.transport;
+
+import org.batch.BatchProcessor;
+import org.batch.Codec;
+import org.batch.Job;
+import org.batch.JobResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BatchProcessor} that sends each batch to a remote
+ * {@link BatchProcessorServer} for processing.
+ *
+ * Batches are encoded with the supplied {@link Codec}s and written to
+ * non-blocking socket channels driven by a single event loop thread.
+ * Each connection can carry any number of batches at once - when several
+ * threads call {@link #process(List)} concurrently, their requests are
+ * pipelined onto the connections and matched up with responses by ID.
+ *
+ * Requests are balanced across the workers by sending each batch on the
+ * open connection with the fewest batches in flight. If a connection
+ * fails, its in-flight batches fail with a {@link RemoteProcessingException}
+ * and it is taken out of rotation until it is reconnected. The next caller
+ * once the backoff has elapsed starts a reconnect, which runs on the event
+ * loop, so callers carry on with the open connections meanwhile. The
+ * backoff doubles after each failed attempt up to a maximum. While every
+ * connection is down, batches fail straight away.
+ *
+ * <pre>{@code
+ * RemoteBatchProcessor<String, String> processor = new RemoteBatchProcessor.Builder<>(MBCodecs.strings(), MBCodecs.strings())
+ *         .withWorker(new InetSocketAddress("worker-1", 9000))
+ *         .withWorker(new InetSocketAddress("worker-2", 9000))
+ *         .build();
+ * }</pre>
+ *
+ * @param <TInput> Type parameter for job input.
+ * @param <TOutput> Type parameter for job output.
+ */
+public class RemoteBatchProcessor<TInput, TOutput> implements BatchProcessor<TInput, TOutput>, AutoCloseable {
+    private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+    private final Codec<TInput> inputCodec;
+    private final Codec<TOutput> outputCodec;
+    private final Duration requestTimeout;
+    private final Duration connectTimeout;
+    private final long reconnectBackoffNanos;
+    private final long maxReconnectBackoffNanos;
+    private final NioEventLoop loop;
+    private final List<WorkerSlot> slots;
+    private final AtomicLong nextRequestId;
+    private final AtomicInteger nextConnection;
+    private volatile boolean closed;
+
+    public RemoteBatchProcessor(Builder<TInput, TOutput> builder) {
+        this.inputCodec = builder.getInputCodec();
+        this.outputCodec = builder.getOutputCodec();
+        this.requestTimeout = builder.getRequestTimeout();
+        this.connectTimeout = builder.getConnectTimeout();
+        this.reconnectBackoffNanos = builder.getReconnectBackoff().toNanos();
+        this.maxReconnectBackoffNanos = Math.max(builder.getMaxReconnectBackoff().toNanos(), reconnectBackoffNanos);
+        this.loop = new NioEventLoop(String.format("mb-transport-client-%d", CLIENT_COUNT.incrementAndGet()));
+        this.slots = new ArrayList<>();
+        this.nextRequestId = new AtomicLong();
+        this.nextConnection = new AtomicInteger();
+        List<InetSocketAddress> workers = new ArrayList<>();
+        List<CompletableFuture<WorkerConnection>> connections = new ArrayList<>();
+        for (InetSocketAddress worker : builder.getWorkers()) {
+            for (int i = 0; i < builder.getConnectionsPerWorker(); i++) {
+                workers.add(worker);
+                connections.add(connect(worker));
+            }
+        }
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                slots.add(new WorkerSlot(workers.get(i), awaitConnected(connections.get(i)), reconnectBackoffNanos));
+            }
+        } catch (IOException e) {
+            loop.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Send the batch to a worker and wait for the results.
+     *
+     * @throws RemoteProcessingException if the worker's processor threw an
+     *         exception, the worker could not be reached, or the request timed out.
+     */
+    @Override
+    public List<JobResult<TOutput>> process(List<Job<TInput>> jobs) {
+        if (jobs.isEmpty()) {
+            return List.of();
+        }
+        long requestId = nextRequestId.incrementAndGet();
+        WorkerConnection connection = chooseConnection();
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        connection.inFlight.put(requestId, response);
+        try {
+            connection.connection.send(Frames.encodeRequest(requestId, jobs, inputCodec));
+            ByteBuffer frame = response.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return Frames.decodeResults(frame, outputCodec);
+        } catch (IOException e) {
+            throw new RemoteProcessingException("Failed to send batch", e);
+        } catch (TimeoutException e) {
+            throw new RemoteProcessingException("Timed out waiting for batch results", e);
+        } catch (ExecutionException e) {
+            throw new RemoteProcessingException("Failed to receive batch results", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteProcessingException("Interrupted waiting for batch results", e);
+        } finally {
+            connection.inFlight.remove(requestId);
+        }
+    }
+
+    /**
+     * Close all connections. Batches still in flight fail with a
+     * {@link RemoteProcessingException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        loop.close();
+    }
+
+    /**
+     * Start opening a connection to a worker. The connection is made on
+     * the event loop, and fails if it takes longer than the connect timeout.
+     */
+    private CompletableFuture<WorkerConnection> connect(InetSocketAddress worker) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            var connection = new WorkerConnection();
+            connection.connection = new NioConnection(loop, channel, connection);
+            return connection.connection.connect(worker, connectTimeout).thenApply(connected -> connection);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static WorkerConnection awaitConnected(CompletableFuture<WorkerConnection> connection) throws IOException {
+        try {
+            return connection.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted connecting to workers");
+        }
+    }
+
+    /**
+     * Start replacing a closed connection once its backoff has elapsed.
+     * The slot is skipped until the new connection is open. Only one
+     * reconnect runs per slot at a time.
+     */
+    private void reconnectIfDue(WorkerSlot slot) {
+        if (closed || !slot.current.connection.isClosed() || System.nanoTime() - slot.retryAtNanos < 0
+                || !slot.reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        connect(slot.worker).whenComplete((connection, e) -> {
+            if (e == null) {
+                slot.current = connection;
+                slot.backoffNanos = reconnectBackoffNanos;
+            } else {
+                slot.retryAtNanos = System.nanoTime() + slot.backoffNanos;
+                slot.backoffNanos = Math.min(slot.backoffNanos * 2, maxReconnectBackoffNanos);
+            }
+            slot.reconnecting.set(false);
+        });
+    }
+
+    /**
+     * Pick the open connection with the fewest batches in flight, starting
+     * from a rotating offset so that ties are spread evenly.
+     */
+    private WorkerConnection chooseConnection() {
+        int start = Math.floorMod(nextConnection.getAndIncrement(), slots.size());
+        WorkerConnection best = null;
+        for (int i = 0; i < slots.size(); i++) {
+            WorkerSlot slot = slots.get((start + i) % slots.size());
+            reconnectIfDue(slot);
+            WorkerConnection candidate = slot.current;
+            if (candidate.connection.isClosed()) {
+                continue;
+            }
+            if (best == null || candidate.inFlight.size() < best.inFlight.size()) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            throw new RemoteProcessingException("No worker connections available");
+        }
+        return best;
+    }
+
+    /**
+     * One of the connections to a worker, replaced when it is reconnected.
+     */
+    private static class WorkerSlot {
+        private final InetSocketAddress worker;
+        private final AtomicBoolean reconnecting;
+        private volatile WorkerConnection current;
+        private volatile long retryAtNanos;
+        private long backoffNanos;
+
+        WorkerSlot(InetSocketAddress worker, WorkerConnection current, long backoffNanos) {
+            this.worker = worker;
+            this.reconnecting = new AtomicBoolean(false);
+            this.current = current;
+            this.retryAtNanos = System.nanoTime();
+            this.backoffNanos = backoffNanos;
+        }
+    }
+
+    /**
+     * A connection to one worker, and the requests awaiting a response on it.
+     */
+    private static class WorkerConnection implements NioConnection.Listener {
+        private final Map<Long, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+        private NioConnection connection;
+
+        @Override
+        public void onFrame(NioConnection connection, ByteBuffer frame) {
+            var response = inFlight.get(frame.getLong());
+            if (response != null) {
+                response.complete(frame);
+            }
+        }
+
+        @Override
+        public void onClosed(NioConnection connection, IOException cause) {
+            inFlight.values().forEach(response -> response.completeExceptionally(cause));
+        }
+    }
+
+    public static class Builder<TInput, TOutput> {
+        private static final int DEFAULT_CONNECTIONS_PER_WORKER = 1;
+        private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+        private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+        private static final Duration DEFAULT_RECONNECT_BACKOFF = Duration.ofMillis(100);
+        private static final Duration DEFAULT_MAX_RECONNECT_BACKOFF = Duration.ofSeconds(10);
+
+        private final Codec<TInput> inputCodec;
+        private final Codec<TOutput> outputCodec;
+        private final List<InetSocketAddress> workers;
+        private int connectionsPerWorker;
+        private Duration requestTimeout;
+        private Duration connectTimeout;
+        private Duration reconnectBackoff;
+        private Duration maxReconnectBackoff;
+
+        public Builder(Codec<TInput> inputCodec, Codec<TOutput> outputCodec) {
+            this.inputCodec = inputCodec;
+            this.outputCodec = outputCodec;
+            this.workers = new ArrayList<>();
+            this.connectionsPerWorker = DEFAULT_CONNECTIONS_PER_WORKER;
+            this.requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+            this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+            this.reconnectBackoff = DEFAULT_RECONNECT_BACKOFF;
+            this.maxReconnectBackoff = DEFAULT_MAX_RECONNECT_BACKOFF;
+        }
+
+        public Codec<TInput> getInputCodec() {
+            return inputCodec;
+        }
+
+        public Codec<TOutput> getOutputCodec() {
+            return outputCodec;
+        }
+
+        public List<InetSocketAddress> getWorkers() {
+            return workers;
+        }
+
+        public int getConnectionsPerWorker() {
+            return connectionsPerWorker;
+        }
+
+        public Duration getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public Duration getReconnectBackoff() {
+            return reconnectBackoff;
+        }
+
+        public Duration getMaxReconnectBackoff() {
+            return maxReconnectBackoff;
+        }
+
+        public Builder<TInput, TOutput> withWorker(InetSocketAddress worker) {
+            this.workers.add(worker);
+            return this;
+        }
+
+        public Builder<TInput, TOutput> withConnectionsPerWorker(int connectionsPerWorker) {
+            this.connectionsPerWorker = connectionsPerWorker;
+            return this;
+        }
+
+        public Builder<TInput, TOutput> withRequestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout Time allowed for connecting to a worker,
+         *        both when the processor is built and when reconnecting.
+         */
+        public Builder<TInput, TOutput> withConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param reconnectBackoff Wait after a failed reconnect before trying
+         *        again, doubled after each further failure.
+         */
+        public Builder<TInput, TOutput> withReconnectBackoff(Duration reconnectBackoff) {
+            this.reconnectBackoff = reconnectBackoff;
+            return this;
+        }
+
+        public Builder<TInput, TOutput> withMaxReconnectBackoff(Duration maxReconnectBackoff) {
+            this.maxReconnectBackoff = maxReconnectBackoff;
+            return this;
+        }
+
+        public RemoteBatchProcessor<TInput, TOutput> build() {
+            return new RemoteBatchProcessor<>(this);
+        }
+    }
+}
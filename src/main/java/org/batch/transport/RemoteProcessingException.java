@@ -0,0 +1,37 @@
+package org.batch.transport;
+
+/**
+ * Thrown by {@link RemoteBatchProcessor} when a batch could not be
+ * processed remotely - either the worker's {@link org.batch.BatchProcessor}
+ * threw an exception, or the worker could not be reached.
+ *
+ * Exceptions raised on the worker can't be sent over the wire, so they
+ * are represented by this class, carrying the original class name.
+ */
+public class RemoteProcessingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String remoteExceptionClass;
+
+    public RemoteProcessingException(String remoteExceptionClass, String message) {
+        super(message);
+        this.remoteExceptionClass = remoteExceptionClass;
+    }
+
+    public RemoteProcessingException(String message) {
+        this(message, (Throwable) null);
+    }
+
+    public RemoteProcessingException(String message, Throwable cause) {
+        super(message, cause);
+        this.remoteExceptionClass = null;
+    }
+
+    /**
+     * @return the class name of the exception thrown on the worker, or
+     *         null if the failure happened in the transport itself.
+     */
+    public String getRemoteExceptionClass() {
+        return remoteExceptionClass;
+    }
+}
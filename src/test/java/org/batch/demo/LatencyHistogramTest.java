@@ -0,0 +1,54 @@
+package org.batch.demo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void getValueAtPercentile_uniformValues_withinOnePercent() {
+        var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1_000);
+        }
+
+        assertEquals(100_000, histogram.getTotalCount());
+        assertWithinOnePercent(50_000_000, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(99_000_000, histogram.getValueAtPercentile(99));
+        assertWithinOnePercent(99_900_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_smallValuesExact() {
+        var histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_empty_returnsZero() {
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void indexFor_bucketBoundariesRoundTrip() {
+        for (long value : new long[] {127, 128, 255, 256, 1_000_003, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexFor(value);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value);
+        }
+    }
+
+    private void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 100,
+                String.format("expected %d but was %d", expected, actual));
+    }
+}
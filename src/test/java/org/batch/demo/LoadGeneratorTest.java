@@ -0,0 +1,71 @@
+package org.batch.demo;
+
+import org.batch.mb.MBBatcher;
+import org.batch.mb.MBBatcherOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void run_allJobsCompletedAndRecorded() {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(10)
+                .withTimeout(Duration.ofMillis(1))
+                .build();
+        var batcher = new MBBatcher<>(options, new PlusOneBatchProcessor());
+
+        var report = new LoadGenerator(batcher, 10_000, Duration.ofMillis(200)).run();
+        batcher.shutdown();
+
+        assertEquals(2_000, report.getSubmitted());
+        assertEquals(2_000, report.getCompleted());
+        assertEquals(0, report.getFailed());
+        assertTrue(report.getThroughput() > 0);
+        assertTrue(report.getCorrectedLatency().getMax() >= report.getUncorrectedLatency().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void run_slowBatcher_correctedLatencyIncludesQueueingDelay() {
+        // Batches of 10 completing every ~5ms can only keep up with 2,000 jobs/s,
+        // so at 4,000 jobs/s a backlog builds up that a closed-loop measurement misses.
+        var slowBatcher = new MBBatcher<Integer, Integer>(new MBBatcherOptions.Builder()
+                .withBatchSize(10)
+                .withTimeout(Duration.ofMillis(1))
+                .build(), jobs -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new PlusOneBatchProcessor().process(jobs);
+        });
+
+        var report = new LoadGenerator(slowBatcher, 4_000, Duration.ofMillis(250)).run();
+        slowBatcher.shutdown();
+
+        assertEquals(1_000, report.getCompleted());
+        assertTrue(report.getCorrectedLatency().getValueAtPercentile(99)
+                >= report.getUncorrectedLatency().getValueAtPercentile(99));
+        assertTrue(report.getCorrectedLatency().getMax() > Duration.ofMillis(100).toNanos());
+    }
+
+    @Test
+    public void writeCsv_onePercentileRowPerLine() throws Exception {
+        var histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        var report = new LoadReport(100, Duration.ofSeconds(1), 1, 0, histogram, histogram);
+        var writer = new StringWriter();
+
+        report.writeCsv(writer);
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals("target_rate,throughput,percentile,corrected_latency_ns,uncorrected_latency_ns", lines[0]);
+        assertEquals("100,1.0,50.0,1000,1000", lines[1]);
+        assertEquals(7, lines.length);
+    }
+}
@@ -0,0 +1,73 @@
+package org.batch.demo;
+
+import org.batch.mb.MBBatcherOptions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulationTest {
+
+    @Test
+    public void run_steadyArrivals_fullBatches() {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(10)
+                .withTimeout(Duration.ofMillis(50))
+                .build();
+        var simulation = new Simulation(options, 1, size -> Duration.ofMillis(1));
+
+        // One job per millisecond for ten seconds of virtual time.
+        var report = simulation.run(Simulation.fixedRate(1_000, Duration.ofSeconds(10)));
+
+        assertEquals(10_000, report.getCompleted());
+        assertEquals(1_000, report.getBatches());
+        assertEquals(1_000, report.getFullBatches());
+        assertEquals(1.0, report.getBatchFill());
+        // The first job of each batch waits for nine more, then the batch takes 1ms.
+        assertEquals(Duration.ofMillis(10).toNanos(), report.getLatency().getMax());
+        assertEquals(0.1, report.getUtilization(), 0.001);
+    }
+
+    @Test
+    public void run_sparseArrivals_partialBatchesAfterLinger() {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(100)
+                .withTimeout(Duration.ofMillis(20))
+                .build();
+        var simulation = new Simulation(options, 1, size -> Duration.ofMillis(1));
+
+        var report = simulation.run(Simulation.fixedRate(10, Duration.ofSeconds(1)));
+
+        assertEquals(10, report.getBatches());
+        assertEquals(0, report.getFullBatches());
+        assertEquals(0.01, report.getBatchFill());
+        assertEquals(Duration.ofMillis(21).toNanos(), report.getLatency().getMax());
+    }
+
+    @Test
+    public void run_sameTrace_sameReport() throws Exception {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(50)
+                .withTimeout(Duration.ofMillis(2))
+                .withMaxConcurrentBatches(2)
+                .build();
+        var simulation = new Simulation(options, 2, size -> Duration.ofNanos((100 + 10L * size) * 1_000));
+        var trace = Files.createTempFile("arrivals", ".txt");
+        try {
+            var arrivals = Simulation.poisson(20_000, Duration.ofSeconds(1), 42);
+            Files.writeString(trace, "# nanoseconds\n" + String.join("\n",
+                    Arrays.stream(arrivals).mapToObj(Long::toString).toList()));
+
+            var first = simulation.run(arrivals);
+            var replayed = simulation.run(Simulation.readTrace(trace));
+
+            assertEquals(arrivals.length, first.getCompleted());
+            assertEquals(first.summary(), replayed.summary());
+        } finally {
+            Files.delete(trace);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBBatcherCombinerTest {
+
+    private final List<String> processedInputs = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void process_jobsWithSameKeyMerged() {
+        var batcher = new MBBatcher<>(options(), this::recordInputs,
+                JobCombiner.of((String input) -> input.charAt(0), String::concat));
+
+        var jobResults = submit(batcher, "a1", "b1", "a2", null, "c1", "a3", null);
+        batcher.shutdown();
+
+        assertEquals(List.of("a1a2a3", "b1", "null", "c1", "null"), processedInputs);
+        assertEquals("A1A2A3", jobResults.get(0).join().getResult());
+        assertEquals("A1A2A3", jobResults.get(2).join().getResult());
+        assertEquals("A1A2A3", jobResults.get(5).join().getResult());
+        assertEquals("B1", jobResults.get(1).join().getResult());
+        assertEquals("", jobResults.get(3).join().getResult());
+    }
+
+    @Test
+    public void process_nullKey_jobNotMerged() {
+        var batcher = new MBBatcher<>(options(), this::recordInputs,
+                JobCombiner.of((String input) -> input.startsWith("x") ? null : input, String::concat));
+
+        submit(batcher, "x", "x", "y", "y");
+        batcher.shutdown();
+
+        assertEquals(List.of("x", "x", "yy"), processedInputs);
+    }
+
+    @Test
+    public void process_processorThrows_allMergedJobsFail() {
+        var batcher = new MBBatcher<>(options(), new UpperCaseBatchProcessor(),
+                JobCombiner.of((String input) -> input, (earlier, later) -> later));
+
+        var jobResults = submit(batcher, "exception", "exception", "other");
+        batcher.shutdown();
+
+        jobResults.forEach(jobResult -> assertFalse(jobResult.join().isSuccess()));
+    }
+
+    private MicroBatcherOptions options() {
+        return new MBBatcherOptions.Builder()
+                .withBatchSize(10)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+    }
+
+    private List<JobResult<String>> recordInputs(List<Job<String>> jobs) {
+        jobs.forEach(job -> processedInputs.add(String.valueOf(job.getInput())));
+        return new UpperCaseBatchProcessor().process(jobs);
+    }
+
+    private List<CompletableFuture<JobResult<String>>> submit(MicroBatcher<String, String> batcher, String... inputs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (String input : inputs) {
+            var job = new MBJob<String>();
+            job.setInput(input);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+}
@@ -0,0 +1,135 @@
+package org.batch.mb;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.batch.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBBatcherEventsTest {
+
+    private Recording recording;
+
+    @BeforeEach
+    public void setUp() {
+        recording = new Recording();
+        recording.enable("org.batch.BatchAssembly");
+        recording.enable("org.batch.BatchProcess");
+        recording.enable("org.batch.BatchCompletion");
+        recording.enable("org.batch.Job");
+        recording.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        recording.close();
+    }
+
+    @Test
+    public void batcher_eventsRecordedForEachBatch() throws IOException {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+
+        awaitAll(submitJobs(batcher, 5));
+        var flushed = submitJobs(batcher, 2);
+        batcher.flush();
+        awaitAll(flushed);
+        submitJobs(batcher, 1);
+        batcher.shutdown();
+
+        var events = stopRecording(batcher);
+        var assembly = eventsOfType(events, "org.batch.BatchAssembly");
+        assertEquals(List.of("FULL", "FLUSH", "SHUTDOWN"), assembly.stream().map(e -> e.getString("trigger")).toList());
+        assertEquals(List.of(5, 2, 1), assembly.stream().map(e -> e.getInt("batchSize")).toList());
+        assembly.forEach(event -> assertTrue(event.getDuration("dispatchDelay").toNanos() >= 0));
+
+        var process = eventsOfType(events, "org.batch.BatchProcess");
+        assertEquals(3, process.size());
+        assertFalse(process.get(0).getBoolean("failed"));
+
+        var completion = eventsOfType(events, "org.batch.BatchCompletion");
+        assertEquals(List.of("INLINE", "INLINE", "INLINE"),
+                completion.stream().map(e -> e.getString("completionMode")).toList());
+
+        var jobs = eventsOfType(events, "org.batch.Job");
+        assertEquals(8, jobs.size());
+        jobs.forEach(event -> assertTrue(event.getDuration("queueTime").toNanos() >= 0));
+    }
+
+    @Test
+    public void runtime_lingerExpiry_recordedAsTimeout() throws IOException {
+        var runtime = new MBBatcherRuntime.Builder().build();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofMillis(10))
+                .withRuntime(runtime)
+                .build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+
+        awaitAll(submitJobs(batcher, 5));
+        awaitAll(submitJobs(batcher, 2));
+        batcher.shutdown();
+        runtime.shutdown();
+
+        var assembly = eventsOfType(stopRecording(batcher), "org.batch.BatchAssembly");
+        assertEquals(List.of("FULL", "TIMEOUT"), assembly.stream().map(e -> e.getString("trigger")).toList());
+        // The linger runs from the first job of the batch, so it covers the fill time too.
+        var lingered = assembly.get(1).getDuration("fillTime").plus(assembly.get(1).getDuration("dispatchDelay"));
+        assertTrue(lingered.toMillis() >= 9);
+    }
+
+    /**
+     * Stop recording and read back the events for the given batcher,
+     * ignoring any from batchers left running by other tests.
+     */
+    private List<RecordedEvent> stopRecording(MBBatcher<?, ?> batcher) throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("mb-batcher", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getInt("batcherId") == batcher.getBatcherId())
+                    .toList();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> eventsOfType(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                .toList();
+    }
+
+    private static void awaitAll(List<CompletableFuture<JobResult<String>>> jobResults) {
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static List<CompletableFuture<JobResult<String>>> submitJobs(MicroBatcher<String, String> batcher,
+                                                                          int numJobs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < numJobs; i++) {
+            var job = new MBJob<String>();
+            job.setInput("job " + i);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+}
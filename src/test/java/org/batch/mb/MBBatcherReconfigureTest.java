@@ -0,0 +1,244 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBBatcherReconfigureTest {
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void reconfigure_batchSize_appliesFromNextBatch() throws Exception {
+        var taken = new Semaphore(0);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofMinutes(1))
+                .withWaitStrategy(countingWaitStrategy(taken))
+                .build();
+        var batcher = new MBBatcher<>(options, this::recordBatchSize);
+        awaitAll(submitJobs(batcher, 5));
+        var inProgress = submitJobs(batcher, 1);
+        // Wait for the background thread to take the job for the next batch.
+        assertTrue(taken.tryAcquire(6, 1, TimeUnit.SECONDS));
+
+        batcher.reconfigure(new MBBatcherOptions.Builder(options).withBatchSize(2).build());
+        // The batch already being collected keeps its original size.
+        inProgress.addAll(submitJobs(batcher, 3));
+        batcher.flush();
+        awaitAll(inProgress);
+        awaitAll(submitJobs(batcher, 4));
+
+        assertEquals(List.of(5, 4, 2, 2), batchSizes);
+        assertEquals(2, batcher.getOptions().batchSize());
+        batcher.shutdown();
+    }
+
+    @Test
+    public void reconfigure_timeoutWhileWaitingForFirstJob_appliesToThatBatch() throws Exception {
+        var waiting = new Semaphore(0);
+        var blocking = MBWaitStrategies.blocking();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofMinutes(1))
+                .withWaitStrategy(new WaitStrategy() {
+                    @Override
+                    public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                        waiting.release();
+                        return blocking.poll(queue, timeoutNanos);
+                    }
+                })
+                .build();
+        var batcher = new MBBatcher<>(options, this::recordBatchSize);
+        assertTrue(waiting.tryAcquire(1, TimeUnit.SECONDS));
+
+        batcher.reconfigure(new MBBatcherOptions.Builder(options).withTimeout(Duration.ofMillis(10)).build());
+        var jobResults = submitJobs(batcher, 1);
+
+        jobResults.get(0).get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(1), batchSizes);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void reconfigure_asFirstJobTaken_batchNotCutShort() throws Exception {
+        var batcherRef = new AtomicReference<MBBatcher<String, String>>();
+        var blocking = MBWaitStrategies.blocking();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(3)
+                .withTimeout(Duration.ofMinutes(1))
+                .withWaitStrategy(new WaitStrategy() {
+                    private boolean reconfigured;
+
+                    @Override
+                    public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                        T next = blocking.poll(queue, timeoutNanos);
+                        if (next != null && !reconfigured) {
+                            // The job is taken, but the batcher hasn't added it to the batch yet.
+                            reconfigured = true;
+                            var batcher = batcherRef.get();
+                            batcher.reconfigure(new MBBatcherOptions.Builder(batcher.getOptions()).build());
+                        }
+                        return next;
+                    }
+                })
+                .build();
+        var batcher = new MBBatcher<>(options, this::recordBatchSize);
+        batcherRef.set(batcher);
+
+        awaitAll(submitJobs(batcher, 3));
+
+        assertEquals(List.of(3), batchSizes);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void reconfigure_maxPendingJobs_limitsQueuedJobs() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(2)
+                .withTimeout(Duration.ofMinutes(1))
+                .withMaxPendingJobs(2)
+                .build();
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            entered.countDown();
+            await(release);
+            return recordBatchSize(jobs);
+        });
+        submitJobs(batcher, 2);
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+
+        submitJobs(batcher, 2);
+        assertThrows(RejectedExecutionException.class, () -> submitJobs(batcher, 1));
+
+        batcher.reconfigure(new MBBatcherOptions.Builder(options).withMaxPendingJobs(10).build());
+        var accepted = submitJobs(batcher, 2);
+        release.countDown();
+        batcher.shutdown();
+
+        awaitAll(accepted);
+        assertEquals(List.of(2, 2, 2), batchSizes);
+    }
+
+    @Test
+    public void reconfigure_maxConcurrentBatches_batchesProcessedInParallel() {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(1)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        assertMaxConcurrency(options, 3);
+    }
+
+    @Test
+    public void reconfigure_maxConcurrentBatches_runtimeBatchesProcessedInParallel() {
+        var runtime = new MBBatcherRuntime.Builder()
+                .withWorkerThreads(2)
+                .build();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(1)
+                .withTimeout(Duration.ofMinutes(1))
+                .withRuntime(runtime)
+                .build();
+        assertMaxConcurrency(options, 2);
+        runtime.shutdown();
+    }
+
+    @Test
+    public void reconfigure_runtimeChanged_rejected() {
+        var options = new MBBatcherOptions.Builder().build();
+        var batcher = new MBBatcher<>(options, this::recordBatchSize);
+        var runtime = new MBBatcherRuntime.Builder().build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> batcher.reconfigure(new MBBatcherOptions.Builder(options).withRuntime(runtime).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> batcher.reconfigure(new MBBatcherOptions.Builder(options).withBatchSize(0).build()));
+
+        batcher.shutdown();
+        runtime.shutdown();
+    }
+
+    /**
+     * Raise the concurrency limit from one, then check that the given
+     * number of single-job batches reach the processor at the same time.
+     */
+    private void assertMaxConcurrency(MicroBatcherOptions options, int concurrency) {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        var allStarted = new CountDownLatch(concurrency);
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            allStarted.countDown();
+            await(allStarted);
+            inFlight.decrementAndGet();
+            return recordBatchSize(jobs);
+        });
+
+        batcher.reconfigure(new MBBatcherOptions.Builder(options).withMaxConcurrentBatches(concurrency).build());
+        var jobResults = submitJobs(batcher, concurrency);
+        batcher.shutdown();
+
+        jobResults.forEach(jobResult -> assertTrue(jobResult.isDone()));
+        assertEquals(concurrency, maxInFlight.get());
+    }
+
+    private List<JobResult<String>> recordBatchSize(List<Job<String>> jobs) {
+        batchSizes.add(jobs.size());
+        return new UpperCaseBatchProcessor().process(jobs);
+    }
+
+    /**
+     * Blocks like the default strategy, releasing a permit for each job taken.
+     */
+    private static WaitStrategy countingWaitStrategy(Semaphore taken) {
+        var blocking = MBWaitStrategies.blocking();
+        return new WaitStrategy() {
+            @Override
+            public <T> T poll(BlockingQueue<T> queue, long timeoutNanos) throws InterruptedException {
+                T next = blocking.poll(queue, timeoutNanos);
+                if (next != null) {
+                    taken.release();
+                }
+                return next;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitAll(List<CompletableFuture<JobResult<String>>> jobResults) {
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static List<CompletableFuture<JobResult<String>>> submitJobs(MicroBatcher<String, String> batcher,
+                                                                          int numJobs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < numJobs; i++) {
+            var job = new MBJob<String>();
+            job.setInput("job " + i);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+}
@@ -0,0 +1,193 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBBatcherRuntimeTest {
+
+    private static final int BATCH_SIZE = 5;
+    private static final int TIMEOUT_MS = 10;
+    private static final int WORKER_THREADS = 2;
+
+    private MBBatcherRuntime runtime;
+    private MicroBatcherOptions options;
+
+    @BeforeEach
+    public void setUp() {
+        runtime = new MBBatcherRuntime.Builder()
+                .withWorkerThreads(WORKER_THREADS)
+                .build();
+        options = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMillis(TIMEOUT_MS))
+                .withRuntime(runtime)
+                .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        runtime.shutdown();
+    }
+
+    @Test
+    public void submit_batchSizeSubmitted_batchProcessorInvoked() throws Exception {
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+
+        var jobResults = submitJobs(batcher, BATCH_SIZE);
+
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+        assertEquals("JOB 0", jobResults.get(0).get().getResult());
+        batcher.shutdown();
+    }
+
+    @Test
+    public void submit_lingerExpires_partialBatchProcessed() throws Exception {
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+
+        var jobResults = submitJobs(batcher, BATCH_SIZE - 1);
+
+        assertFalse(jobResults.get(0).isDone());
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void shutdown_partialBatchProcessedWithoutWaitingForLinger() {
+        var longLinger = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMinutes(1))
+                .withRuntime(runtime)
+                .build();
+        var batcher = new MBBatcher<>(longLinger, new UpperCaseBatchProcessor());
+        var jobResults = submitJobs(batcher, BATCH_SIZE - 2);
+
+        batcher.shutdown();
+
+        jobResults.forEach(jobResult -> assertTrue(jobResult.isDone()));
+    }
+
+    @Test
+    public void flush_partialBatchDispatchedBeforeLinger() throws Exception {
+        var longLinger = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMinutes(1))
+                .withRuntime(runtime)
+                .build();
+        var batcher = new MBBatcher<>(longLinger, new UpperCaseBatchProcessor());
+        var jobResults = submitJobs(batcher, BATCH_SIZE - 2);
+
+        batcher.flush();
+
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void shutdownNow_unprocessedJobsReturned() {
+        var longLinger = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMinutes(1))
+                .withRuntime(runtime)
+                .build();
+        var batcher = new MBBatcher<>(longLinger, new UpperCaseBatchProcessor());
+        var jobResults = submitJobs(batcher, BATCH_SIZE - 2);
+
+        var unprocessed = batcher.shutdownNow();
+
+        assertEquals(BATCH_SIZE - 2, unprocessed.size());
+        assertEquals("job 0", unprocessed.get(0).getInput());
+        jobResults.forEach(jobResult -> assertFalse(jobResult.join().isSuccess()));
+    }
+
+    @Test
+    public void runtime_manyBatchersShareWorkerThreads() throws Exception {
+        int numBatchers = 200;
+        List<MicroBatcher<String, String>> batchers = new ArrayList<>();
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < numBatchers; i++) {
+            var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+            batchers.add(batcher);
+            jobResults.addAll(submitJobs(batcher, BATCH_SIZE + 1));
+        }
+
+        CompletableFuture.allOf(jobResults.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        long runtimeThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("mb-runtime-"))
+                .count();
+        assertTrue(runtimeThreads <= WORKER_THREADS + 1);
+        batchers.forEach(MicroBatcher::shutdown);
+    }
+
+    @Test
+    public void runtime_onlyOneBatchInFlightPerBatcher() throws Exception {
+        var inFlight = new AtomicBoolean(false);
+        var overlapped = new AtomicBoolean(false);
+        BatchProcessor<String, String> processor = jobs -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                overlapped.set(true);
+            }
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.set(false);
+            return new UpperCaseBatchProcessor().process(jobs);
+        };
+        var batcher = new MBBatcher<>(options, processor);
+
+        var jobResults = submitJobs(batcher, BATCH_SIZE * 4);
+        batcher.shutdown();
+
+        jobResults.forEach(jobResult -> assertTrue(jobResult.isDone()));
+        assertFalse(overlapped.get());
+    }
+
+    @Test
+    public void timerWheel_cancelledTimeoutDoesNotRun() throws Exception {
+        var ran = new AtomicBoolean(false);
+        var later = new CountDownLatch(1);
+
+        var timeout = runtime.schedule(Duration.ofMillis(5), () -> ran.set(true));
+        runtime.schedule(Duration.ofMillis(20), later::countDown);
+
+        assertTrue(timeout.cancel());
+        assertTrue(later.await(1, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void timerWheel_timeoutBeyondOneRotationRunsAfterDelay() throws Exception {
+        var wheel = new MBTimerWheel(Duration.ofMillis(1), 4, Thread::new);
+        var fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        wheel.schedule(Duration.ofMillis(20), fired::countDown);
+
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+        wheel.stop();
+    }
+
+    private List<CompletableFuture<JobResult<String>>> submitJobs(MicroBatcher<String, String> batcher, int numJobs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < numJobs; i++) {
+            var job = new MBJob<String>();
+            job.setInput("job " + i);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+}
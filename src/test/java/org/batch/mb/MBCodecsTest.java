@@ -0,0 +1,27 @@
+package org.batch.mb;
+
+import org.batch.Codec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBCodecsTest {
+
+    @Test
+    public void strings_encodedAsUtf8() {
+        Codec<String> codec = MBCodecs.strings();
+        String[] values = {"", "hello", "caf\u00e9", "\u20ac100", "\ud83d\ude00 smile", "lone \ud83d", "\ude00 lone"};
+
+        for (String value : values) {
+            byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, codec.encodedSize(value), value);
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            codec.encode(value, buffer);
+            assertArrayEquals(expected, buffer.array(), value);
+            assertEquals(new String(expected, StandardCharsets.UTF_8), codec.decode(buffer.flip()));
+        }
+    }
+}
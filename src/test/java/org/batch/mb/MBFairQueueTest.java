@@ -0,0 +1,116 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBFairQueueTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void poll_tenantsServedInWeightedRounds() {
+        var weights = Map.of("a", 2, "b", 1);
+        var queue = new MBFairQueue<String>(element -> element.substring(0, 1), weights::get);
+        List.of("a1", "a2", "a3", "a4", "a5", "b1", "b2").forEach(queue::add);
+
+        List<String> taken = new ArrayList<>();
+        queue.drainTo(taken);
+
+        assertEquals(List.of("a1", "a2", "b1", "a3", "a4", "b2", "a5"), taken);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void poll_backgroundLaneServedLast() {
+        var queue = new MBFairQueue<String>(element -> element.startsWith("x") ? null : element, tenant -> 1);
+        queue.add("x1");
+        queue.add("a");
+        queue.add("b");
+
+        assertEquals("a", queue.peek());
+        assertEquals(List.of("a", "b", "x1"), List.copyOf(queue));
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertEquals("x1", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void poll_emptyQueue_waitsForTimeout() throws InterruptedException {
+        var queue = new MBFairQueue<String>(element -> element, tenant -> 1);
+
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        CompletableFuture.runAsync(() -> queue.add("late"));
+        assertEquals("late", queue.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submit_noisyTenant_quietTenantNotStarved() throws InterruptedException {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(4)
+                .withTimeout(Duration.ofMinutes(1))
+                .withFairQueueing(tenant -> 1)
+                .build();
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            entered.countDown();
+            await(release);
+            batches.add(jobs.stream().map(Job::getInput).toList());
+            return new UpperCaseBatchProcessor().process(jobs);
+        });
+
+        // Hold up the first batch while the noisy tenant floods the queue.
+        submit(batcher, "noisy", 4);
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+        submit(batcher, "noisy", 20);
+        var quiet = submit(batcher, "quiet", 2);
+        release.countDown();
+
+        quiet.forEach(jobResult -> assertTrue(jobResult.join().isSuccess()));
+        assertEquals(List.of("noisy", "quiet", "noisy", "quiet"), batches.get(1));
+        batcher.shutdown();
+        assertEquals(1 + 24 / 4, batches.size());
+    }
+
+    @Test
+    public void reconfigure_fairQueueingToggled_rejected() {
+        var options = new MBBatcherOptions.Builder().build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> batcher.reconfigure(new MBBatcherOptions.Builder(options).withFairQueueing(tenant -> 1).build()));
+
+        batcher.shutdown();
+    }
+
+    private static List<CompletableFuture<JobResult<String>>> submit(MicroBatcher<String, String> batcher,
+                                                                    String tenantId, int numJobs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < numJobs; i++) {
+            var job = new MBJob<String>();
+            job.setInput(tenantId);
+            jobResults.add(batcher.submit(job, tenantId));
+        }
+        return jobResults;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBJobCompleterTest {
+
+    @Test
+    public void complete_inline_completesOnCallingThread() {
+        var completer = new MBJobCompleter<String>(optionsWithMode(CompletionMode.INLINE, null));
+        var futures = makeFutures(3);
+        var completingThread = new AtomicReference<Thread>();
+        futures.get(0).thenRun(() -> completingThread.set(Thread.currentThread()));
+
+        completer.complete(futures, makeResults(3));
+
+        futures.forEach(future -> assertTrue(future.isDone()));
+        assertEquals(Thread.currentThread(), completingThread.get());
+    }
+
+    @Test
+    public void complete_executor_completesOnSuppliedExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "completions"));
+        var completer = new MBJobCompleter<String>(optionsWithMode(CompletionMode.EXECUTOR, executor));
+        var futures = makeFutures(3);
+        var completingThread = new AtomicReference<String>();
+        var callbackRan = futures.get(2).thenRun(() -> completingThread.set(Thread.currentThread().getName()));
+
+        completer.complete(futures, makeResults(3));
+
+        callbackRan.get(1, TimeUnit.SECONDS);
+        assertEquals("completions", completingThread.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void shutdown_batched_waitsForOwnedCompletionThread() {
+        var completer = new MBJobCompleter<String>(optionsWithMode(CompletionMode.BATCHED, null));
+        var futures = makeFutures(5);
+
+        completer.complete(futures, makeResults(5));
+        completer.shutdown();
+
+        futures.forEach(future -> assertTrue(future.isDone()));
+    }
+
+    @Test
+    public void batcher_slowCallbackDoesNotDelayNextBatch() throws Exception {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(1)
+                .withTimeout(Duration.ofMillis(10))
+                .withCompletionMode(CompletionMode.BATCHED)
+                .build();
+        var batchesProcessed = new CountDownLatch(2);
+        var callbackRegistered = new CountDownLatch(1);
+        BatchProcessor<String, String> processor = jobs -> {
+            try {
+                // Hold the first batch until its callback is registered, so
+                // the callback doesn't run inline on the test thread.
+                callbackRegistered.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!jobs.isEmpty()) {
+                batchesProcessed.countDown();
+            }
+            return new UpperCaseBatchProcessor().process(jobs);
+        };
+        var batcher = new MBBatcher<>(options, processor);
+        var releaseCallback = new CountDownLatch(1);
+
+        batcher.submit(makeJob("first")).thenRun(() -> {
+            try {
+                releaseCallback.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        callbackRegistered.countDown();
+        var second = batcher.submit(makeJob("second"));
+
+        // The second batch is processed while the first callback is still blocked.
+        assertTrue(batchesProcessed.await(1, TimeUnit.SECONDS));
+        releaseCallback.countDown();
+        batcher.shutdown();
+        assertEquals("SECOND", second.get().getResult());
+    }
+
+    @Test
+    public void batcher_wrongResultCount_failsBatchAndKeepsRunning() throws Exception {
+        for (CompletionMode mode : List.of(CompletionMode.INLINE, CompletionMode.EXECUTOR)) {
+            var options = new MBBatcherOptions.Builder()
+                    .withBatchSize(2)
+                    .withTimeout(Duration.ofMinutes(1))
+                    .withCompletionMode(mode)
+                    .build();
+            BatchProcessor<String, String> processor = jobs -> {
+                var results = new ArrayList<>(new UpperCaseBatchProcessor().process(jobs));
+                if (jobs.get(0).getInput().equals("extra")) {
+                    results.addAll(makeResults(1));
+                } else if (jobs.get(0).getInput().equals("missing")) {
+                    results.remove(1);
+                }
+                return results;
+            };
+            var batcher = new MBBatcher<>(options, processor);
+
+            var extra = List.of(batcher.submit(makeJob("extra")), batcher.submit(makeJob("b")));
+            var missing = List.of(batcher.submit(makeJob("missing")), batcher.submit(makeJob("d")));
+            var next = batcher.submit(makeJob("next"));
+            batcher.flush();
+
+            for (var future : List.of(extra.get(0), extra.get(1), missing.get(0), missing.get(1))) {
+                var exception = future.get(1, TimeUnit.SECONDS).getException();
+                assertInstanceOf(IllegalStateException.class, exception.orElseThrow(), mode.name());
+            }
+            assertEquals("NEXT", next.get(1, TimeUnit.SECONDS).getResult());
+            batcher.shutdown();
+        }
+    }
+
+    private MicroBatcherOptions optionsWithMode(CompletionMode mode, ExecutorService executor) {
+        return new MBBatcherOptions.Builder()
+                .withCompletionMode(mode)
+                .withCompletionExecutor(executor)
+                .build();
+    }
+
+    private List<CompletableFuture<JobResult<String>>> makeFutures(int count) {
+        List<CompletableFuture<JobResult<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        return futures;
+    }
+
+    private List<JobResult<String>> makeResults(int count) {
+        List<JobResult<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MBJobResult<String> result = new MBJobResult<>();
+            result.setSuccess(true);
+            result.setResult(String.valueOf(i));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Job<String> makeJob(String input) {
+        var job = new MBJob<String>();
+        job.setInput(input);
+        return job;
+    }
+}
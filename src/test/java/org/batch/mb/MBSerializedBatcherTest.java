@@ -0,0 +1,235 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBSerializedBatcherTest {
+    private static final int BATCH_SIZE = 5;
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void submit_inputsEncodedIntoDirectBuffer() throws Exception {
+        var directBuffers = new CopyOnWriteArrayList<Boolean>();
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), MBCodecs.strings(), batch -> {
+            directBuffers.add(batch.buffer().isDirect());
+            return upperCase(batch);
+        }, new MBBufferPool(1024, 2));
+
+        var jobResults = submit(batcher, "a", null, "hello", "d", "e");
+
+        assertEquals("A", jobResults.get(0).get(1, TimeUnit.SECONDS).getResult());
+        assertEquals("", jobResults.get(1).get().getResult());
+        assertEquals("HELLO", jobResults.get(2).get().getResult());
+        assertEquals(List.of(true), directBuffers);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void submit_segmentFull_partialBatchDispatched() {
+        // Each "xxxx" input takes 8 bytes with its length prefix.
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), MBCodecs.strings(),
+                this::upperCase, new MBBufferPool(20, 4));
+
+        var jobResults = submit(batcher, "xxxx", "xxxx", "xxxx", "xxxx", "xxxx");
+        batcher.shutdown();
+
+        assertEquals(List.of(2, 2, 1), batchSizes);
+        jobResults.forEach(jobResult -> assertEquals("XXXX", jobResult.join().getResult()));
+    }
+
+    @Test
+    public void submit_oversizedInput_rejected() {
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), MBCodecs.strings(),
+                this::upperCase, new MBBufferPool(16, 1));
+
+        assertThrows(IllegalArgumentException.class, () -> submit(batcher, "more than twelve bytes"));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void submit_segmentsReusedFromPool() {
+        var pool = new MBBufferPool(1024, 2);
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), MBCodecs.strings(),
+                this::upperCase, pool);
+
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE * 20; i++) {
+            jobResults.addAll(submit(batcher, "job " + i));
+        }
+        batcher.shutdown();
+
+        assertEquals(20, batchSizes.size());
+        assertTrue(pool.getAllocatedSegments() <= 2);
+        assertEquals("JOB 99", jobResults.get(99).join().getResult());
+    }
+
+    @Test
+    public void flush_partialBatchDispatchedWithoutWaitingForTimeout() throws Exception {
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofMinutes(1)), MBCodecs.strings(),
+                this::upperCase, new MBBufferPool(1024, 2));
+        var jobResults = submit(batcher, "a", "b");
+
+        batcher.flush();
+
+        assertEquals("B", jobResults.get(1).get(1, TimeUnit.SECONDS).getResult());
+        batcher.shutdown();
+    }
+
+    @Test
+    public void process_processorThrows_batchFails() {
+        var batcher = new MBSerializedBatcher<String, String>(options(Duration.ofSeconds(10)), MBCodecs.strings(),
+                batch -> {
+                    throw new IllegalStateException("failed");
+                }, new MBBufferPool(1024, 1));
+
+        var jobResults = submit(batcher, "a", "b");
+        batcher.shutdown();
+
+        jobResults.forEach(jobResult -> assertEquals("failed", jobResult.join().getErrorMessage()));
+    }
+
+    @Test
+    public void shutdownNow_unprocessedInputsDecoded() throws Exception {
+        var release = new CountDownLatch(1);
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), MBCodecs.strings(), batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return upperCase(batch);
+        }, new MBBufferPool(1024, 4));
+        var jobResults = submit(batcher, "0", "1", "2", "3", "4", "5", "6", "7");
+        // Wait for the first batch to reach the processor.
+        Thread.sleep(20);
+
+        var shutdownResult = CompletableFuture.supplyAsync(batcher::shutdownNow);
+        Thread.sleep(20);
+        release.countDown();
+        var unprocessed = shutdownResult.get();
+
+        assertEquals(List.of("5", "6", "7"), unprocessed.stream().map(Job::getInput).toList());
+        assertTrue(jobResults.get(0).get().isSuccess());
+        assertInstanceOf(CancellationException.class, jobResults.get(7).get().getException().get());
+    }
+
+    @Test
+    public void submit_onePooledSegmentAndShortTimeout_noDeadlock() {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(4)
+                .withTimeout(Duration.ofNanos(2000))
+                .build();
+        var batcher = new MBSerializedBatcher<>(options, MBCodecs.strings(), this::upperCase, new MBBufferPool(1024, 1));
+
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 5000; i++) {
+                jobResults.addAll(submit(batcher, "job " + i));
+            }
+            batcher.shutdown();
+        });
+
+        assertEquals("JOB 4999", jobResults.get(4999).join().getResult());
+    }
+
+    @Test
+    public void submit_racesWithShutdown_rejected() throws Exception {
+        var encoding = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        Codec<String> strings = MBCodecs.strings();
+        Codec<String> slowCodec = new Codec<>() {
+            @Override
+            public int encodedSize(String value) {
+                encoding.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return strings.encodedSize(value);
+            }
+
+            @Override
+            public void encode(String value, ByteBuffer buffer) {
+                strings.encode(value, buffer);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                return strings.decode(buffer);
+            }
+        };
+        var batcher = new MBSerializedBatcher<>(options(Duration.ofSeconds(10)), slowCodec,
+                this::upperCase, new MBBufferPool(1024, 1));
+
+        // The submitter has passed the shutdown check before shutdown begins.
+        var submitted = CompletableFuture.supplyAsync(() -> submit(batcher, "late"));
+        assertTrue(encoding.await(1, TimeUnit.SECONDS));
+        batcher.shutdown();
+        release.countDown();
+
+        var exception = assertThrows(ExecutionException.class, () -> submitted.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalCallerException.class, exception.getCause());
+    }
+
+    @Test
+    public void constructor_unsupportedOptions_rejected() {
+        var pool = new MBBufferPool(1024, 2);
+        var unsupported = List.of(
+                new MBBatcherOptions.Builder(options(Duration.ofSeconds(10))).withMaxConcurrentBatches(2).build(),
+                new MBBatcherOptions.Builder(options(Duration.ofSeconds(10))).withMaxPendingJobs(100).build(),
+                new MBBatcherOptions.Builder(options(Duration.ofSeconds(10))).withFairQueueing(tenant -> 1).build());
+
+        for (var options : unsupported) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new MBSerializedBatcher<>(options, MBCodecs.strings(), this::upperCase, pool));
+        }
+    }
+
+    private MBBatcherOptions options(Duration timeout) {
+        return new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(timeout)
+                .build();
+    }
+
+    private List<CompletableFuture<JobResult<String>>> submit(MicroBatcher<String, String> batcher, String... inputs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (String input : inputs) {
+            var job = new MBJob<String>();
+            job.setInput(input);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+
+    /**
+     * Decode each input and upper-case it, as {@link UpperCaseBatchProcessor} does.
+     */
+    private List<JobResult<String>> upperCase(SerializedBatch batch) {
+        batchSizes.add(batch.size());
+        List<JobResult<String>> results = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String input = batch.decode(i, MBCodecs.strings());
+            MBJobResult<String> result = new MBJobResult<>();
+            result.setSuccess(true);
+            result.setResult(input == null ? "" : input.toUpperCase());
+            results.add(result);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,60 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBSimulatedRuntimeTest {
+
+    @Test
+    public void run_tasksInVirtualTimeOrder() {
+        var runtime = new MBSimulatedRuntime(1);
+        List<String> ran = new ArrayList<>();
+        runtime.schedule(Duration.ofMinutes(10), () -> ran.add("late at " + runtime.nanoTime()));
+        runtime.schedule(Duration.ofMillis(1), () -> ran.add("early at " + runtime.nanoTime()));
+        runtime.schedule(Duration.ofMillis(5), () -> ran.add("cancelled")).cancel();
+        runtime.execute(() -> runtime.spend(Duration.ofMillis(2)));
+        runtime.execute(() -> ran.add("queued at " + runtime.nanoTime()));
+
+        runtime.run();
+
+        assertEquals(List.of("early at 1000000", "queued at 2000000", "late at 600000000000"), ran);
+        assertEquals(Duration.ofMillis(2).toNanos(), runtime.getBusyNanos());
+    }
+
+    @Test
+    public void batcher_partialBatch_dispatchedExactlyAtLinger() {
+        var runtime = new MBSimulatedRuntime(1);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofSeconds(30))
+                .withRuntime(runtime)
+                .build();
+        List<Long> completedAt = new ArrayList<>();
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            runtime.spend(Duration.ofMillis(3));
+            return new UpperCaseBatchProcessor().process(jobs);
+        });
+
+        runtime.schedule(Duration.ofSeconds(1), () -> submit(batcher, runtime, completedAt));
+        runtime.schedule(Duration.ofSeconds(2), () -> submit(batcher, runtime, completedAt));
+        runtime.run();
+        batcher.shutdown(Duration.ZERO);
+        runtime.run();
+        batcher.shutdown();
+
+        long expected = Duration.ofSeconds(31).plusMillis(3).toNanos();
+        assertEquals(List.of(expected, expected), completedAt);
+    }
+
+    private static void submit(MBBatcher<String, String> batcher, MBSimulatedRuntime runtime, List<Long> completedAt) {
+        var job = new MBJob<String>();
+        job.setInput("job");
+        batcher.submit(job).thenAccept(jobResult -> completedAt.add(runtime.nanoTime()));
+    }
+}
@@ -0,0 +1,288 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBSpillQueueTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void poll_spilledJobsReadBackInOrder() throws IOException {
+        var queue = new MBSpillQueue<String, String>(spillOptions(2));
+        List<MBPendingJob<String, String>> submitted = new ArrayList<>();
+        for (String input : new String[]{"a", "b", "c", null, "longer input", "e", "f"}) {
+            submitted.add(pendingJob(input));
+        }
+        submitted.forEach(queue::add);
+
+        assertEquals(7, queue.size());
+        assertEquals(5, queue.spilledSize());
+        assertTrue(queue.segmentCount() > 1);
+
+        List<MBPendingJob<String, String>> taken = new ArrayList<>();
+        queue.drainTo(taken);
+        for (int i = 0; i < submitted.size(); i++) {
+            assertEquals(submitted.get(i).getJob().getInput(), taken.get(i).getJob().getInput());
+            assertSame(submitted.get(i).getJobResult(), taken.get(i).getJobResult());
+            assertEquals(submitted.get(i).getSubmitNanos(), taken.get(i).getSubmitNanos());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.segmentCount());
+
+        queue.close();
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void poll_markerKeepsItsPlace() {
+        var queue = new MBSpillQueue<String, String>(spillOptions(1));
+        var marker = new MBPendingJob<String, String>(null);
+        queue.add(pendingJob("a"));
+        queue.add(pendingJob("b"));
+        queue.add(marker);
+        queue.add(pendingJob("c"));
+
+        assertEquals("a", queue.poll().getJob().getInput());
+        assertEquals("b", queue.poll().getJob().getInput());
+        assertSame(marker, queue.poll());
+        assertEquals("c", queue.poll().getJob().getInput());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void offer_inputLargerThanSegment_rejected() {
+        var queue = new MBSpillQueue<String, String>(spillOptions(0));
+
+        assertThrows(IllegalArgumentException.class, () -> queue.add(pendingJob("x".repeat(64))));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void offer_codecFails_laterRecordsIntact() {
+        var queue = new MBSpillQueue<String, String>(spillOptions(failingCodec(), 0));
+        queue.add(pendingJob("a"));
+        assertThrows(IllegalArgumentException.class, () -> queue.add(pendingJob("bad")));
+        assertThrows(IllegalStateException.class, () -> queue.add(pendingJob("short")));
+        queue.add(pendingJob("cc"));
+        queue.add(pendingJob("dd"));
+
+        assertEquals("a", queue.poll().getJob().getInput());
+        assertEquals("cc", queue.poll().getJob().getInput());
+        assertEquals("dd", queue.poll().getJob().getInput());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void poll_inputCannotBeDecoded_jobFailed() {
+        var queue = new MBSpillQueue<String, String>(spillOptions(failingCodec(), 0));
+        var poison = pendingJob("poison");
+        queue.add(pendingJob("a"));
+        queue.add(poison);
+        queue.add(pendingJob("c"));
+
+        assertEquals("a", queue.poll().getJob().getInput());
+        assertEquals("c", queue.poll().getJob().getInput());
+        assertNull(queue.poll());
+        var exception = poison.getJobResult().join().getException();
+        assertInstanceOf(IllegalArgumentException.class, exception.orElseThrow());
+    }
+
+    @Test
+    public void submit_inputCannotBeDecoded_notReplayed() throws IOException {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(4)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var logDirectory = Files.createDirectory(directory.resolve("log"));
+        var log = new MBWriteAheadLog.Builder<>(MBCodecs.strings(), logDirectory).build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor(), null,
+                spillOptions(failingCodec(), 0), log);
+
+        var jobResults = submit(batcher, "a", "poison", "c");
+        batcher.shutdown();
+
+        assertTrue(jobResults.get(0).join().isSuccess());
+        assertFalse(jobResults.get(1).join().isSuccess());
+        assertTrue(new MBWriteAheadLog.Builder<>(MBCodecs.strings(), logDirectory).build()
+                .drainRecovered().isEmpty());
+    }
+
+    @Test
+    public void submit_backlogSpilledAndProcessedInOrder() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(4)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            jobs.forEach(job -> processed.add(job.getInput()));
+            return new UpperCaseBatchProcessor().process(jobs);
+        }, null, spillOptions(3));
+
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            var job = new MBJob<String>();
+            job.setInput("job " + i);
+            inputs.add(job.getInput());
+            jobResults.add(batcher.submit(job));
+            if (i == 3) {
+                assertTrue(entered.await(1, TimeUnit.SECONDS));
+            }
+        }
+        assertTrue(segmentFiles() > 0);
+        release.countDown();
+        batcher.shutdown();
+
+        assertEquals(inputs, processed);
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(inputs.get(i).toUpperCase(), jobResults.get(i).join().getResult());
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void constructor_leftoverSegments_deleted() throws IOException {
+        Files.createFile(directory.resolve("mb-spill-123.seg"));
+        var other = Files.createFile(directory.resolve("other.seg"));
+
+        var queue = new MBSpillQueue<String, String>(spillOptions(0));
+
+        assertEquals(1, segmentFiles());
+        assertTrue(Files.exists(other));
+        queue.close();
+    }
+
+    @Test
+    public void shutdownWithTimeout_deadlinePasses_segmentsDeletedOnceDrained() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(2)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var batcher = new MBBatcher<String, String>(options, jobs -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new UpperCaseBatchProcessor().process(jobs);
+        }, null, spillOptions(0));
+        var jobResults = submit(batcher, "a", "b", "c", "d", "e");
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+
+        assertFalse(batcher.shutdown(Duration.ofMillis(10)));
+        assertTrue(segmentFiles() > 0);
+        release.countDown();
+
+        CompletableFuture.allOf(jobResults.toArray(CompletableFuture<?>[]::new)).get(1, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (segmentFiles() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void constructor_spillWithFairQueueing_rejected() {
+        var options = new MBBatcherOptions.Builder()
+                .withFairQueueing(tenant -> 1)
+                .build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBBatcher<>(options, new UpperCaseBatchProcessor(), null, spillOptions(1)));
+    }
+
+    private MBSpillOptions<String> spillOptions(int memoryThreshold) {
+        return spillOptions(MBCodecs.strings(), memoryThreshold);
+    }
+
+    private MBSpillOptions<String> spillOptions(Codec<String> codec, int memoryThreshold) {
+        return new MBSpillOptions.Builder<>(codec, directory)
+                .withMemoryThreshold(memoryThreshold)
+                .withSegmentSize(32)
+                .build();
+    }
+
+    private long segmentFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Strings codec that fails to encode "bad", writes one byte less than
+     * it declares for "short", and fails to decode "poison".
+     */
+    private static Codec<String> failingCodec() {
+        Codec<String> strings = MBCodecs.strings();
+        return new Codec<>() {
+            @Override
+            public int encodedSize(String value) {
+                return strings.encodedSize(value) + (value.equals("short") ? 1 : 0);
+            }
+
+            @Override
+            public void encode(String value, ByteBuffer buffer) {
+                if (value.equals("bad")) {
+                    buffer.put((byte) 'x');
+                    throw new IllegalArgumentException("Cannot encode " + value);
+                }
+                strings.encode(value, buffer);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                String value = strings.decode(buffer);
+                if (value.equals("poison")) {
+                    throw new IllegalArgumentException("Cannot decode " + value);
+                }
+                return value;
+            }
+        };
+    }
+
+    private static List<CompletableFuture<JobResult<String>>> submit(MicroBatcher<String, String> batcher,
+                                                                    String... inputs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (String input : inputs) {
+            var job = new MBJob<String>();
+            job.setInput(input);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+
+    private static MBPendingJob<String, String> pendingJob(String input) {
+        var job = new MBJob<String>();
+        job.setInput(input);
+        return new MBPendingJob<>(job);
+    }
+}
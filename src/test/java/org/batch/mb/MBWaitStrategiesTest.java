@@ -0,0 +1,71 @@
+package org.batch.mb;
+
+import org.batch.WaitStrategy;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBWaitStrategiesTest {
+
+    private static final long TIMEOUT_NANOS = Duration.ofMillis(20).toNanos();
+
+    static Stream<WaitStrategy> strategies() {
+        return Stream.of(
+                MBWaitStrategies.blocking(),
+                MBWaitStrategies.spinThenPark(100, 10, Duration.ofMillis(1).toNanos()),
+                MBWaitStrategies.busySpin());
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    public void poll_elementAvailable_returnsImmediately(WaitStrategy strategy) throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        queue.add("job");
+
+        assertEquals("job", strategy.poll(queue, TIMEOUT_NANOS));
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    public void poll_queueEmpty_returnsNullAfterTimeout(WaitStrategy strategy) throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        long start = System.nanoTime();
+
+        assertNull(strategy.poll(queue, TIMEOUT_NANOS));
+        assertTrue(System.nanoTime() - start >= TIMEOUT_NANOS);
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    public void poll_elementArrivesWhileWaiting_returnsElement(WaitStrategy strategy) throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        ScheduledExecutorService producer = Executors.newSingleThreadScheduledExecutor();
+        producer.schedule(() -> queue.add("job"), 5, TimeUnit.MILLISECONDS);
+
+        assertEquals("job", strategy.poll(queue, Duration.ofSeconds(1).toNanos()));
+        producer.shutdown();
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    public void batcher_jobsProcessedWithStrategy(WaitStrategy strategy) throws Exception {
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(5)
+                .withTimeout(Duration.ofMillis(5))
+                .withWaitStrategy(strategy)
+                .build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor());
+        var job = new MBJob<String>();
+        job.setInput("hello");
+
+        var jobResult = batcher.submit(job);
+
+        assertEquals("HELLO", jobResult.get(1, TimeUnit.SECONDS).getResult());
+        batcher.shutdown();
+    }
+}
@@ -0,0 +1,289 @@
+package org.batch.mb;
+
+import org.batch.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MBWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void open_unfinishedJobsRecoveredInOrder() {
+        var log = openLog(1024);
+        long a = log.append("a");
+        long b = log.append(null);
+        long c = log.append("c");
+        log.markDone(a);
+        log.close();
+
+        var reopened = openLog(1024);
+        Map<Long, String> expected = new HashMap<>();
+        expected.put(b, null);
+        expected.put(c, "c");
+        var recovered = reopened.drainRecovered();
+        assertEquals(expected, recovered);
+        assertEquals(List.of(b, c), List.copyOf(recovered.keySet()));
+        assertTrue(reopened.drainRecovered().isEmpty());
+        assertTrue(reopened.append("d") > c);
+    }
+
+    @Test
+    public void open_tornRecord_ignored() throws IOException {
+        var log = openLog(1024);
+        long kept = log.append("kept");
+        log.append("torn");
+        log.close();
+
+        try (var files = Files.list(directory)) {
+            Path segment = files.findFirst().orElseThrow();
+            try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                // Flip a byte of the second record's input.
+                int secondPayload = (13 + 4 + 4) + 13;
+                channel.write(ByteBuffer.wrap(new byte[]{'x'}), secondPayload);
+            }
+        }
+
+        assertEquals(Map.of(kept, "kept"), openLog(1024).drainRecovered());
+    }
+
+    @Test
+    public void markDone_finishedSegmentsDeleted() throws IOException {
+        var log = openLog(64);
+        long[] ids = IntStream.range(0, 20).mapToLong(i -> log.append("job " + i)).toArray();
+        assertTrue(log.segmentCount() > 5);
+
+        log.markDone(Arrays.copyOfRange(ids, 0, 10));
+        assertEquals(10, log.unfinishedCount());
+        log.markDone(Arrays.copyOfRange(ids, 10, 20));
+
+        assertEquals(1, log.segmentCount());
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void append_concurrentSubmitters_allDurable() {
+        var log = openLog(4096);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        var submitters = IntStream.range(0, 8)
+                .mapToObj(t -> CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        ids.add(log.append(t + "-" + i));
+                    }
+                }))
+                .toArray(CompletableFuture<?>[]::new);
+        CompletableFuture.allOf(submitters).join();
+        log.close();
+
+        assertEquals(400, ids.size());
+        assertEquals(400, openLog(4096).drainRecovered().size());
+    }
+
+    @Test
+    public void append_whileForcing_nextForceShared() throws Exception {
+        var forcing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var builder = new MBWriteAheadLog.Builder<>(MBCodecs.strings(), directory).withSegmentSize(1024);
+        var log = new MBWriteAheadLog<>(builder) {
+            @Override
+            void force(MappedByteBuffer buffer, int index, int length) {
+                forcing.countDown();
+                await(release);
+                super.force(buffer, index, length);
+            }
+        };
+
+        var first = CompletableFuture.runAsync(() -> log.append("first"));
+        assertTrue(forcing.await(1, TimeUnit.SECONDS));
+        var others = IntStream.range(0, 3)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> log.append("other " + i)))
+                .toArray(CompletableFuture<?>[]::new);
+        while (log.unfinishedCount() < 4) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        CompletableFuture.allOf(others).get(1, TimeUnit.SECONDS);
+
+        // The appends made during the first force share the second.
+        assertEquals(2, log.forceCount());
+    }
+
+    @Test
+    public void append_codecFails_laterRecordsRecovered() {
+        var log = new MBWriteAheadLog.Builder<>(failingCodec(), directory).build();
+        long a = log.append("a");
+        assertThrows(IllegalArgumentException.class, () -> log.append("bad"));
+        assertThrows(IllegalStateException.class, () -> log.append("short"));
+        long c = log.append("c");
+        long d = log.append("d");
+        log.close();
+
+        assertEquals(Map.of(a, "a", c, "c", d, "d"), openLog(1024).drainRecovered());
+    }
+
+    @Test
+    public void batcher_queueRejectsJob_notReplayed() throws IOException {
+        var spill = new MBSpillOptions.Builder<>(failingCodec(), Files.createDirectory(directory.resolve("spill")))
+                .withMemoryThreshold(0)
+                .build();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(100)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor(), null, spill, openLog(1024));
+
+        // Logged, but the spill queue can't encode it.
+        assertThrows(IllegalArgumentException.class, () -> submit(batcher, "bad"));
+        batcher.shutdown();
+
+        assertTrue(openLog(1024).drainRecovered().isEmpty());
+    }
+
+    @Test
+    public void batcher_unprocessedJobsReplayedAfterRestart() {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        // On a runtime, jobs stay queued until the linger expires, rather
+        // than being taken by a background thread collecting a batch.
+        var runtime = new MBBatcherRuntime.Builder().build();
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(100)
+                .withTimeout(Duration.ofMinutes(1))
+                .withRuntime(runtime)
+                .build();
+        BatchProcessor<String, String> processor = jobs -> {
+            jobs.forEach(job -> processed.add(job.getInput()));
+            return new UpperCaseBatchProcessor().process(jobs);
+        };
+
+        var batcher = new MBBatcher<>(options, processor, null, null, openLog(1024));
+        var done = submit(batcher, "done 1", "done 2");
+        batcher.flush();
+        done.forEach(CompletableFuture::join);
+        submit(batcher, "lost 1", "lost 2", "lost 3");
+        // Stands in for a crash - the jobs are neither processed nor marked done.
+        assertEquals(3, batcher.shutdownNow().size());
+
+        processed.clear();
+        var restarted = new MBBatcher<>(options, processor, null, null, openLog(1024));
+        restarted.flush();
+        var recovered = restarted.getRecoveredJobs();
+        assertEquals(3, recovered.size());
+        assertEquals("LOST 1", recovered.get(0).join().getResult());
+        restarted.shutdown();
+        runtime.shutdown();
+
+        assertEquals(List.of("lost 1", "lost 2", "lost 3"), processed);
+        assertTrue(openLog(1024).drainRecovered().isEmpty());
+    }
+
+    @Test
+    public void batcher_submitRacesShutdown_jobProcessed() throws Exception {
+        var forcing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var builder = new MBWriteAheadLog.Builder<>(MBCodecs.strings(), directory).withSegmentSize(1024);
+        var log = new MBWriteAheadLog<>(builder) {
+            @Override
+            void force(MappedByteBuffer buffer, int index, int length) {
+                forcing.countDown();
+                await(release);
+                super.force(buffer, index, length);
+            }
+        };
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(100)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var batcher = new MBBatcher<>(options, new UpperCaseBatchProcessor(), null, null, log);
+
+        // The submitter has passed the shutdown check before shutdown begins.
+        var submitted = CompletableFuture.supplyAsync(() -> submit(batcher, "late").get(0));
+        assertTrue(forcing.await(1, TimeUnit.SECONDS));
+        var shutdown = CompletableFuture.runAsync(batcher::shutdown);
+        assertThrows(TimeoutException.class, () -> shutdown.get(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+
+        assertEquals("LATE", submitted.get(1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS).getResult());
+        shutdown.get(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Strings codec that fails to encode "bad", and writes one byte less
+     * than it declares for "short".
+     */
+    private static Codec<String> failingCodec() {
+        Codec<String> strings = MBCodecs.strings();
+        return new Codec<>() {
+            @Override
+            public int encodedSize(String value) {
+                return strings.encodedSize(value) + (value.equals("short") ? 1 : 0);
+            }
+
+            @Override
+            public void encode(String value, ByteBuffer buffer) {
+                if (value.equals("bad")) {
+                    buffer.put((byte) 'x');
+                    throw new IllegalArgumentException("Cannot encode " + value);
+                }
+                strings.encode(value, buffer);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                return strings.decode(buffer);
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private MBWriteAheadLog<String> openLog(int segmentSize) {
+        return new MBWriteAheadLog.Builder<>(MBCodecs.strings(), directory)
+                .withSegmentSize(segmentSize)
+                .build();
+    }
+
+    private static List<CompletableFuture<JobResult<String>>> submit(MicroBatcher<String, String> batcher,
+                                                                    String... inputs) {
+        List<CompletableFuture<JobResult<String>>> jobResults = new ArrayList<>();
+        for (String input : inputs) {
+            var job = new MBJob<String>();
+            job.setInput(input);
+            jobResults.add(batcher.submit(job));
+        }
+        return jobResults;
+    }
+}
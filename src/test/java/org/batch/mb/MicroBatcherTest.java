@@ -9,6 +9,10 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -135,6 +139,113 @@ public class MicroBatcherTest {
         assertThrows(IllegalCallerException.class, () -> batcher.submit(job));
     }
 
+    @Test
+    public void flush_partialBatchDispatchedWithoutWaitingForTimeout() throws Exception {
+        var longTimeout = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var slowBatcher = new MBBatcher<>(longTimeout, processor);
+        var jobResult = slowBatcher.submit(new MBJob<>());
+
+        slowBatcher.flush();
+
+        assertNotNull(jobResult.get(1, TimeUnit.SECONDS));
+        slowBatcher.shutdown();
+    }
+
+    @Test
+    public void shutdown_longTimeout_partialBatchNotDelayed() {
+        var longTimeout = new MBBatcherOptions.Builder()
+                .withBatchSize(BATCH_SIZE)
+                .withTimeout(Duration.ofMinutes(1))
+                .build();
+        var slowBatcher = new MBBatcher<>(longTimeout, processor);
+        var jobResult = slowBatcher.submit(new MBJob<>());
+
+        assertTrue(slowBatcher.shutdown(Duration.ofSeconds(1)));
+        assertTrue(jobResult.isDone());
+    }
+
+    @Test
+    public void shutdownWithTimeout_deadlinePasses_returnsFalse() {
+        var release = new CountDownLatch(1);
+        var blockingBatcher = new MBBatcher<>(options, blockingProcessor(release));
+        var jobResults = submitJobs(blockingBatcher, makeJobs(BATCH_SIZE));
+
+        assertFalse(blockingBatcher.shutdown(Duration.ofMillis(20)));
+        assertFalse(jobResults.get(0).isDone());
+
+        release.countDown();
+        assertTrue(blockingBatcher.shutdown(Duration.ofSeconds(1)));
+        jobResults.forEach((jobResultFuture) -> assertTrue(jobResultFuture.isDone()));
+    }
+
+    @Test
+    public void shutdownNow_unprocessedJobsReturned() throws Exception {
+        var release = new CountDownLatch(1);
+        var blockingBatcher = new MBBatcher<>(options, blockingProcessor(release));
+        var jobs = makeJobs(BATCH_SIZE * 3);
+        var jobResults = submitJobs(blockingBatcher, jobs);
+        // Wait for the first batch to reach the processor.
+        Thread.sleep(TIMEOUT_MS);
+
+        var shutdownResult = CompletableFuture.supplyAsync(blockingBatcher::shutdownNow);
+        Thread.sleep(TIMEOUT_MS);
+        release.countDown();
+        var unprocessed = shutdownResult.get();
+
+        assertEquals(jobs.subList(BATCH_SIZE, jobs.size()), unprocessed);
+        assertTrue(jobResults.get(0).get().isSuccess());
+        var cancelled = jobResults.get(jobs.size() - 1).get();
+        assertFalse(cancelled.isSuccess());
+        assertInstanceOf(CancellationException.class, cancelled.getException().get());
+        assertThrows(IllegalCallerException.class, () -> blockingBatcher.submit(new MBJob<>()));
+    }
+
+    @Test
+    public void flush_repeated_singleMarkerNotCountedAsPending() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        var limited = new MBBatcherOptions.Builder()
+                .withBatchSize(2)
+                .withTimeout(Duration.ofMinutes(1))
+                .withMaxPendingJobs(2)
+                .build();
+        var flushingBatcher = new MBBatcher<String, String>(limited, jobs -> {
+            entered.countDown();
+            batchSizes.add(jobs.size());
+            return blockingProcessor(release).process(jobs);
+        });
+        submitJobs(flushingBatcher, makeJobs(2));
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+
+        var first = submitJobs(flushingBatcher, makeJobs(1));
+        flushingBatcher.flush();
+        flushingBatcher.flush();
+        // The marker already queued is behind the first job only.
+        var second = submitJobs(flushingBatcher, makeJobs(1));
+        flushingBatcher.flush();
+        release.countDown();
+
+        assertNotNull(first.get(0).get(1, TimeUnit.SECONDS));
+        assertNotNull(second.get(0).get(1, TimeUnit.SECONDS));
+        assertEquals(List.of(2, 1, 1), batchSizes);
+        flushingBatcher.shutdown();
+    }
+
+    private BatchProcessor<String, String> blockingProcessor(CountDownLatch release) {
+        return jobs -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return processor.process(jobs);
+        };
+    }
+
     private List<Job<String>> makeJobs(int numJobs) {
         List<Job<String>> jobs = new ArrayList<>();
         for (int i = 0; i < numJobs; i++) {
@@ -145,6 +256,11 @@ public class MicroBatcherTest {
     }
 
     private List<CompletableFuture<JobResult<String>>> submitJobs(List<Job<String>> jobs) {
+        return submitJobs(batcher, jobs);
+    }
+
+    private List<CompletableFuture<JobResult<String>>> submitJobs(MicroBatcher<String, String> batcher,
+                                                                   List<Job<String>> jobs) {
         return jobs.stream()
                 .map(job -> batcher.submit(job))
                 .toList();
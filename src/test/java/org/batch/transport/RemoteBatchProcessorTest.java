@@ -0,0 +1,255 @@
+package org.batch.transport;
+
+import org.batch.BatchProcessor;
+import org.batch.Job;
+import org.batch.JobResult;
+import org.batch.demo.RemoteWorker;
+import org.batch.mb.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteBatchProcessorTest {
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+        processes.forEach(Process::destroy);
+    }
+
+    @Test
+    public void process_resultsReturnedFromRemoteProcessor() throws Exception {
+        var address = startServer(new UpperCaseBatchProcessor());
+        var client = startClient(address);
+
+        var results = client.process(makeJobs("hello", "error", null));
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("HELLO", results.get(0).getResult());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(UpperCaseBatchProcessor.ERROR_MESSAGE, results.get(1).getErrorMessage());
+        assertEquals("", results.get(2).getResult());
+    }
+
+    @Test
+    public void process_remoteProcessorThrows_exceptionRethrown() throws Exception {
+        var address = startServer(new UpperCaseBatchProcessor());
+        var client = startClient(address);
+
+        var exception = assertThrows(RemoteProcessingException.class,
+                () -> client.process(makeJobs("exception")));
+
+        assertEquals(UpperCaseBatchProcessor.EXCEPTION_MESSAGE, exception.getMessage());
+        assertEquals(IllegalArgumentException.class.getName(), exception.getRemoteExceptionClass());
+    }
+
+    @Test
+    public void process_concurrentBatchesPipelinedOnOneConnection() throws Exception {
+        int numBatches = 50;
+        var address = startServer(new UpperCaseBatchProcessor());
+        var client = startClient(address);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+
+        List<Future<List<JobResult<String>>>> futures = new ArrayList<>();
+        for (int i = 0; i < numBatches; i++) {
+            String input = "batch " + i;
+            futures.add(callers.submit(() -> client.process(makeJobs(input, input))));
+        }
+
+        for (int i = 0; i < numBatches; i++) {
+            var results = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("BATCH " + i, results.get(1).getResult());
+        }
+        callers.shutdown();
+    }
+
+    @Test
+    public void process_batchesBalancedAcrossWorkers() throws Exception {
+        var firstCount = new AtomicInteger();
+        var secondCount = new AtomicInteger();
+        var first = startServer(countingProcessor(firstCount));
+        var second = startServer(countingProcessor(secondCount));
+        var client = startClient(first, second);
+
+        for (int i = 0; i < 10; i++) {
+            client.process(makeJobs("job"));
+        }
+
+        assertEquals(5, firstCount.get());
+        assertEquals(5, secondCount.get());
+    }
+
+    @Test
+    public void process_workerStopped_batchFails() throws Exception {
+        var server = new BatchProcessorServer.Builder<>(new UpperCaseBatchProcessor(), MBCodecs.strings(), MBCodecs.strings())
+                .build();
+        var client = startClient(server.start());
+
+        server.close();
+
+        assertThrows(RemoteProcessingException.class, () -> client.process(makeJobs("hello")));
+    }
+
+    @Test
+    public void process_workerRestarted_reconnected() throws Exception {
+        var server = new BatchProcessorServer.Builder<>(new UpperCaseBatchProcessor(), MBCodecs.strings(), MBCodecs.strings())
+                .build();
+        var address = server.start();
+        var client = new RemoteBatchProcessor.Builder<>(MBCodecs.strings(), MBCodecs.strings())
+                .withWorker(address)
+                .withRequestTimeout(Duration.ofSeconds(5))
+                .withReconnectBackoff(Duration.ofMillis(10))
+                .build();
+        resources.add(client);
+
+        server.close();
+        // Fails while the worker is down, including the reconnect attempts.
+        assertThrows(RemoteProcessingException.class, () -> client.process(makeJobs("hello")));
+        assertThrows(RemoteProcessingException.class, () -> client.process(makeJobs("hello")));
+
+        var restarted = new BatchProcessorServer.Builder<>(new UpperCaseBatchProcessor(), MBCodecs.strings(), MBCodecs.strings())
+                .withAddress(address)
+                .build();
+        resources.add(restarted);
+        restarted.start();
+
+        // The reconnect runs in the background, and batches fail until it completes.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        List<JobResult<String>> results = null;
+        while (results == null) {
+            try {
+                results = client.process(makeJobs("hello"));
+            } catch (RemoteProcessingException e) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        assertEquals("HELLO", results.get(0).getResult());
+    }
+
+    @Test
+    public void process_workerUnreachable_otherWorkerNotHeldUp() throws Exception {
+        var healthy = startServer(new UpperCaseBatchProcessor());
+        // Once its accept queue is full, connection attempts to this worker hang.
+        var blackHole = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+        resources.add(blackHole);
+        var client = new RemoteBatchProcessor.Builder<>(MBCodecs.strings(), MBCodecs.strings())
+                .withWorker(healthy)
+                .withWorker((InetSocketAddress) blackHole.getLocalAddress())
+                .withRequestTimeout(Duration.ofSeconds(5))
+                .withConnectTimeout(Duration.ofSeconds(5))
+                .build();
+        resources.add(0, client);
+
+        blackHole.accept().close();
+        for (int i = 0; i < 4; i++) {
+            var filler = SocketChannel.open();
+            resources.add(filler);
+            filler.configureBlocking(false);
+            filler.connect(blackHole.getLocalAddress());
+        }
+        Thread.sleep(50);
+
+        var results = CompletableFuture.supplyAsync(() -> client.process(makeJobs("hello")))
+                .get(1, TimeUnit.SECONDS);
+        assertEquals("HELLO", results.get(0).getResult());
+    }
+
+    @Test
+    public void batcher_jobsProcessedByLocalWorkerProcesses() throws Exception {
+        var client = new RemoteBatchProcessor.Builder<>(MBCodecs.integers(), MBCodecs.integers())
+                .withWorker(startWorkerProcess())
+                .withWorker(startWorkerProcess())
+                .build();
+        resources.add(client);
+        var options = new MBBatcherOptions.Builder()
+                .withBatchSize(10)
+                .withTimeout(Duration.ofMillis(10))
+                .build();
+        var batcher = new MBBatcher<>(options, client);
+
+        List<CompletableFuture<JobResult<Integer>>> jobResults = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            var job = new MBJob<Integer>();
+            job.setInput(i);
+            jobResults.add(batcher.submit(job));
+        }
+        batcher.shutdown();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, jobResults.get(i).get().getResult());
+        }
+    }
+
+    private InetSocketAddress startServer(BatchProcessor<String, String> processor) throws IOException {
+        var server = new BatchProcessorServer.Builder<>(processor, MBCodecs.strings(), MBCodecs.strings())
+                .withWorkerThreads(4)
+                .build();
+        resources.add(server);
+        return server.start();
+    }
+
+    private RemoteBatchProcessor<String, String> startClient(InetSocketAddress... workers) {
+        var builder = new RemoteBatchProcessor.Builder<>(MBCodecs.strings(), MBCodecs.strings())
+                .withRequestTimeout(Duration.ofSeconds(5));
+        for (InetSocketAddress worker : workers) {
+            builder.withWorker(worker);
+        }
+        var client = builder.build();
+        resources.add(0, client);
+        return client;
+    }
+
+    /**
+     * Launch {@link RemoteWorker} in a separate JVM and read back its port.
+     */
+    private InetSocketAddress startWorkerProcess() throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        var process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RemoteWorker.class.getName(), "workerThreads=2")
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        processes.add(process);
+        var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        int port = Integer.parseInt(reader.readLine().trim());
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private BatchProcessor<String, String> countingProcessor(AtomicInteger count) {
+        return jobs -> {
+            count.incrementAndGet();
+            return new UpperCaseBatchProcessor().process(jobs);
+        };
+    }
+
+    private List<Job<String>> makeJobs(String... inputs) {
+        List<Job<String>> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            var job = new MBJob<String>();
+            job.setInput(input);
+            jobs.add(job);
+        }
+        return jobs;
+    }
+}